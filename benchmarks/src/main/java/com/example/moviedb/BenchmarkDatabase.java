@@ -0,0 +1,265 @@
+package com.example.moviedb;
+
+import com.scalar.db.api.DistributedTransaction;
+import com.scalar.db.api.DistributedTransactionManager;
+import com.scalar.db.api.Delete;
+import com.scalar.db.api.Put;
+import com.scalar.db.api.Result;
+import com.scalar.db.api.Scan;
+import com.scalar.db.io.Key;
+import com.scalar.db.service.TransactionFactory;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+// A SQLite file per data set size, seeded through ScalarDB on first use and reused by later runs.
+// A data set of N rows holds N movies, N list entries spread over N/10 users, and five pending
+// friend requests per user, plus one user per LIST_SIZES entry with that many movies in the
+// watchlist. Seeding the 1M set takes several minutes.
+final class BenchmarkDatabase {
+    static final String NAMESPACE = "moviedb";
+    static final String BENCH_USER = "user-000000";
+    static final int BENCH_USER_LIST_SIZE = 200;
+    static final int[] LIST_SIZES = {10, 100, 800};
+    static final String[] TITLE_WORDS = {
+        "star", "night", "love", "war", "city", "dark", "last", "blue", "house", "river", "king", "ghost"
+    };
+
+    private static final int BATCH_SIZE = 500;
+    private static final int LIST_ENTRIES_PER_USER = 10;
+    private static final int FRIEND_REQUESTS_PER_USER = 5;
+    private static final int USER_SEARCH_PREFIX_LENGTH = 8;
+
+    private BenchmarkDatabase() {
+    }
+
+    // Points ScalarDBOperations at the data set's file, seeding it first if needed
+    static ScalarDBOperations open(int rows) throws Exception {
+        Path directory = Paths.get(System.getProperty("moviedb.bench.dir", "target/bench-db"));
+        Files.createDirectories(directory);
+        Path file = directory.resolve("moviedb-" + rows + ".sqlite3").toAbsolutePath();
+        Path seeded = directory.resolve("moviedb-" + rows + ".seeded");
+
+        // loadProperties lets scalar.db.* system properties override scalardb.properties
+        System.setProperty("scalar.db.contact_points", "jdbc:sqlite:" + file + "?busy_timeout=50000");
+        System.setProperty("scalar.db.username", "");
+        System.setProperty("scalar.db.password", "");
+        Properties properties = ScalarDBOperations.loadProperties();
+
+        if (!Files.exists(seeded)) {
+            Files.deleteIfExists(file);
+            SchemaInstaller.install(properties);
+            seed(properties, rows);
+            Files.createFile(seeded);
+        }
+        // Seeded separately, so data sets from before the list users were added keep working
+        Path listsSeeded = directory.resolve("moviedb-" + rows + ".lists.seeded");
+        if (!Files.exists(listsSeeded)) {
+            seedListUsers(properties, rows);
+            Files.createFile(listsSeeded);
+        }
+
+        ScalarDBOperations scalarDBOperations = new ScalarDBOperations();
+        scalarDBOperations.initialize(false);
+        return scalarDBOperations;
+    }
+
+    static String title(int movieId) {
+        int words = TITLE_WORDS.length;
+        return TITLE_WORDS[movieId % words] + " " + TITLE_WORDS[(movieId / words) % words] + " " + movieId;
+    }
+
+    static String userId(int user) {
+        return String.format("user-%06d", user);
+    }
+
+    static String listUser(int listSize) {
+        return String.format("list-%06d", listSize);
+    }
+
+    // Deletes the user's change log, which every list write appends to, so write benchmarks start
+    // from the same state in every run
+    static void resetChangeLog(String userId) throws Exception {
+        DistributedTransactionManager manager = TransactionFactory.create(ScalarDBOperations.loadProperties()).getTransactionManager();
+        try {
+            DistributedTransaction scanTx = manager.start();
+            List<Result> entries;
+            try {
+                entries = scanTx.scan(Scan.newBuilder()
+                    .namespace(NAMESPACE)
+                    .table("change_log")
+                    .partitionKey(Key.ofText("userId", userId))
+                    .projections("seq")
+                    .build());
+                scanTx.commit();
+            } catch (Exception e) {
+                scanTx.rollback();
+                throw e;
+            }
+
+            List<Delete> batch = new ArrayList<>(BATCH_SIZE);
+            for (Result entry : entries) {
+                batch.add(Delete.newBuilder()
+                    .namespace(NAMESPACE)
+                    .table("change_log")
+                    .partitionKey(Key.ofText("userId", userId))
+                    .clusteringKey(Key.ofBigInt("seq", entry.getBigInt("seq")))
+                    .build());
+                if (batch.size() >= BATCH_SIZE) {
+                    delete(manager, batch);
+                }
+            }
+            batch.add(Delete.newBuilder()
+                .namespace(NAMESPACE)
+                .table("change_log_heads")
+                .partitionKey(Key.ofText("userId", userId))
+                .build());
+            delete(manager, batch);
+        } finally {
+            manager.close();
+        }
+    }
+
+    private static void delete(DistributedTransactionManager manager, List<Delete> batch) throws Exception {
+        DistributedTransaction tx = manager.start();
+        try {
+            tx.delete(batch);
+            tx.commit();
+        } catch (Exception e) {
+            tx.rollback();
+            throw e;
+        }
+        batch.clear();
+    }
+
+    private static void seedListUsers(Properties properties, int rows) throws Exception {
+        DistributedTransactionManager manager = TransactionFactory.create(properties).getTransactionManager();
+        try {
+            List<Put> batch = new ArrayList<>(BATCH_SIZE);
+            for (int listSize : LIST_SIZES) {
+                String userId = listUser(listSize);
+                batch.add(Put.newBuilder()
+                    .namespace(NAMESPACE)
+                    .table("users")
+                    .partitionKey(Key.ofText("userId", userId))
+                    .textValue("password", "bench")
+                    .textValue("email", userId + "@example.com")
+                    .build());
+                // 104729 is prime and so coprime to every data set size: the movies are distinct
+                for (int entry = 0; entry < Math.min(listSize, rows); entry++) {
+                    batch.add(Put.newBuilder()
+                        .namespace(NAMESPACE)
+                        .table("watchlist")
+                        .partitionKey(Key.ofText("userId", userId))
+                        .clusteringKey(Key.ofInt("movieId", (int) ((long) entry * 104729 % rows) + 1))
+                        .build());
+                    flushIfFull(manager, batch);
+                }
+            }
+            flush(manager, batch);
+        } finally {
+            manager.close();
+        }
+    }
+
+    private static void seed(Properties properties, int rows) throws Exception {
+        DistributedTransactionManager manager = TransactionFactory.create(properties).getTransactionManager();
+        try {
+            long start = System.nanoTime();
+            List<Put> batch = new ArrayList<>(BATCH_SIZE);
+
+            for (int movieId = 1; movieId <= rows; movieId++) {
+                batch.add(Put.newBuilder()
+                    .namespace(NAMESPACE)
+                    .table("movies")
+                    .partitionKey(Key.ofInt("movieId", movieId))
+                    .textValue("title", title(movieId))
+                    .textValue("release_date", "2001-01-01")
+                    .textValue("poster_path", "/poster" + movieId + ".jpg")
+                    .textValue("genre_ids", "12,14,878")
+                    .build());
+                flushIfFull(manager, batch);
+            }
+
+            int users = Math.max(rows / LIST_ENTRIES_PER_USER, 100);
+            for (int user = 0; user < users; user++) {
+                String userId = userId(user);
+                batch.add(Put.newBuilder()
+                    .namespace(NAMESPACE)
+                    .table("users")
+                    .partitionKey(Key.ofText("userId", userId))
+                    .textValue("password", "bench")
+                    .textValue("email", userId + "@example.com")
+                    .build());
+                // Same prefixes as ScalarDBOperations.userSearchPuts
+                for (int length = 1; length <= Math.min(userId.length(), USER_SEARCH_PREFIX_LENGTH); length++) {
+                    batch.add(Put.newBuilder()
+                        .namespace(NAMESPACE)
+                        .table("user_search_index")
+                        .partitionKey(Key.ofText("prefix", userId.substring(0, length)))
+                        .clusteringKey(Key.ofText("userId", userId))
+                        .build());
+                }
+
+                int listSize = user == 0 ? BENCH_USER_LIST_SIZE : LIST_ENTRIES_PER_USER;
+                for (int entry = 0; entry < listSize; entry++) {
+                    int movieId = (int) (((long) user * 7919 + (long) entry * 104729) % rows) + 1;
+                    batch.add(Put.newBuilder()
+                        .namespace(NAMESPACE)
+                        .table(entry % 2 == 0 ? "watchlist" : "watched")
+                        .partitionKey(Key.ofText("userId", userId))
+                        .clusteringKey(Key.ofInt("movieId", movieId))
+                        .build());
+                }
+
+                for (int offset = 1; offset <= FRIEND_REQUESTS_PER_USER; offset++) {
+                    String requesteeId = userId((user + offset) % users);
+                    batch.add(Put.newBuilder()
+                        .namespace(NAMESPACE)
+                        .table("friend_requests")
+                        .partitionKey(Key.ofText("requester_id", userId))
+                        .clusteringKey(Key.ofText("requestee_id", requesteeId))
+                        .textValue("status", "pending")
+                        .build());
+                    batch.add(Put.newBuilder()
+                        .namespace(NAMESPACE)
+                        .table("friend_requests_by_requestee")
+                        .partitionKey(Key.ofText("requestee_id", requesteeId))
+                        .clusteringKey(Key.ofText("requester_id", userId))
+                        .textValue("status", "pending")
+                        .build());
+                }
+                flushIfFull(manager, batch);
+            }
+            flush(manager, batch);
+            System.out.printf("Seeded %d rows in %ds%n", rows, (System.nanoTime() - start) / 1_000_000_000L);
+        } finally {
+            manager.close();
+        }
+    }
+
+    private static void flushIfFull(DistributedTransactionManager manager, List<Put> batch) throws Exception {
+        if (batch.size() >= BATCH_SIZE) {
+            flush(manager, batch);
+        }
+    }
+
+    private static void flush(DistributedTransactionManager manager, List<Put> batch) throws Exception {
+        if (batch.isEmpty()) {
+            return;
+        }
+        DistributedTransaction tx = manager.start();
+        try {
+            tx.put(batch);
+            tx.commit();
+        } catch (Exception e) {
+            tx.rollback();
+            throw e;
+        }
+        batch.clear();
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.moviedb;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// The read and write paths behind the list, search and friend endpoints, against a seeded SQLite
+// database of each size. Pages use the endpoints' default limits. The list benchmarks also vary
+// the length of the list read.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class DataAccessBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    public int rows;
+
+    private static final String WRITER = "bench-writer";
+
+    private ScalarDBOperations scalarDBOperations;
+    private int nextMovieId;
+
+    @State(Scope.Benchmark)
+    public static class ListSize {
+        @Param({"10", "100", "800"})
+        public int entries;
+    }
+
+    @Setup(Level.Trial)
+    public void open() throws Exception {
+        scalarDBOperations = BenchmarkDatabase.open(rows);
+        // Also clears what an interrupted run left behind
+        BenchmarkDatabase.resetChangeLog(WRITER);
+    }
+
+    @TearDown(Level.Trial)
+    public void close() throws Exception {
+        scalarDBOperations.close();
+        BenchmarkDatabase.resetChangeLog(WRITER);
+    }
+
+    // The first page, as /api/listwatchlist serves it
+    @Benchmark
+    public Page<Movie> listMoviesInUserList(ListSize listSize) throws Exception {
+        return scalarDBOperations.listMoviesInUserList(BenchmarkDatabase.listUser(listSize.entries), "watchlist", 50, null);
+    }
+
+    // Every page in turn, at the largest page size the endpoint allows
+    @Benchmark
+    public int listWholeUserList(ListSize listSize) throws Exception {
+        String userId = BenchmarkDatabase.listUser(listSize.entries);
+        int count = 0;
+        Integer cursor = null;
+        do {
+            Page<Movie> page = scalarDBOperations.listMoviesInUserList(userId, "watchlist", 100, cursor);
+            count += page.getItems().size();
+            cursor = page.getNextCursor() == null ? null : Integer.valueOf(page.getNextCursor());
+        } while (cursor != null);
+        return count;
+    }
+
+    @Benchmark
+    public Page<Movie> searchMovies() throws Exception {
+        return scalarDBOperations.searchMovies("star night", 20, 0);
+    }
+
+    @Benchmark
+    public Page<UserSummary> searchUsers() throws Exception {
+        return scalarDBOperations.searchUsers("user-0001", 20, null);
+    }
+
+    @Benchmark
+    public Page<FriendRequest> listFriendRequests() throws Exception {
+        return scalarDBOperations.listFriendRequests(BenchmarkDatabase.BENCH_USER, 50, null);
+    }
+
+    // The path MovieService.addMovie takes for a movie already in the catalog. The entry is
+    // removed again so the list keeps its size across iterations; the change log entries both
+    // write are deleted after the trial.
+    @Benchmark
+    public boolean addMovie() throws Exception {
+        int movieId = nextMovieId++ % rows + 1;
+        boolean added = scalarDBOperations.addMovieToCatalogAndList(WRITER, movieId, "watchlist", null);
+        scalarDBOperations.removeMovieFromList(WRITER, movieId, "watchlist");
+        return added;
+    }
+}
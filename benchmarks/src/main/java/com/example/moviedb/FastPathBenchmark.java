@@ -0,0 +1,75 @@
+package com.example.moviedb;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+// Compares the throughput of single-partition lookups run as transactions and through the storage
+// fast path, against the database configured in scalardb.properties. Each thread reads its own
+// bench-user-N rows. List adds and removes always run in transactions, since they append to the
+// change log, so they are not compared.
+// Run with: java -cp target/benchmarks.jar com.example.moviedb.FastPathBenchmark [threads] [seconds]
+public class FastPathBenchmark {
+    private static final int WARMUP_SECONDS = 5;
+    private static final int MOVIE_IDS = 1000;
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 30;
+
+        double transactional = run(false, threads, seconds);
+        double fastPath = run(true, threads, seconds);
+        System.out.printf("transactional: %.0f ops/s, storage fast path: %.0f ops/s (%.2fx)%n",
+            transactional, fastPath, fastPath / transactional);
+        System.exit(0);
+    }
+
+    private static double run(boolean storageFastPath, int threads, int seconds) throws Exception {
+        ScalarDBOperations scalarDBOperations = new ScalarDBOperations();
+        scalarDBOperations.initialize(storageFastPath);
+        try {
+            runFor(scalarDBOperations, threads, WARMUP_SECONDS);
+            long operations = runFor(scalarDBOperations, threads, seconds);
+            double throughput = (double) operations / seconds;
+            System.out.printf("%s: %d operations in %ds with %d threads, %.0f ops/s%n",
+                storageFastPath ? "storage fast path" : "transactional", operations, seconds, threads, throughput);
+            return throughput;
+        } finally {
+            scalarDBOperations.close();
+        }
+    }
+
+    // Each round is three point lookups: a watchlist row, a friendship and a user
+    private static long runFor(ScalarDBOperations scalarDBOperations, int threads, int seconds) throws Exception {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Long>> workers = new ArrayList<>(threads);
+            for (int t = 0; t < threads; t++) {
+                String userId = "bench-user-" + t;
+                workers.add(pool.submit(() -> {
+                    long operations = 0;
+                    for (int i = 0; System.nanoTime() < deadline; i++) {
+                        int movieId = i % MOVIE_IDS;
+                        scalarDBOperations.isMovieInList(userId, movieId, "watchlist");
+                        scalarDBOperations.areFriends(userId, "bench-friend");
+                        scalarDBOperations.isUserInUsersTable(userId);
+                        operations += 3;
+                    }
+                    return operations;
+                }));
+            }
+
+            long operations = 0;
+            for (Future<Long> worker : workers) {
+                operations += worker.get();
+            }
+            return operations;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.example.moviedb;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Serialization of list responses as Json.respond writes them, without a database
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonBenchmark {
+
+    @Param({"20", "100"})
+    public int pageSize;
+
+    private final OutputStream sink = OutputStream.nullOutputStream();
+    private List<Movie> movies;
+    private List<FriendRequest> friendRequests;
+
+    @Setup
+    public void createPages() {
+        movies = new ArrayList<>(pageSize);
+        friendRequests = new ArrayList<>(pageSize);
+        for (int i = 0; i < pageSize; i++) {
+            movies.add(new Movie(1000 + i, BenchmarkDatabase.title(1000 + i), "2001-01-01", "/poster" + i + ".jpg", new int[] {12, 14, 878}));
+            friendRequests.add(new FriendRequest(BenchmarkDatabase.BENCH_USER, BenchmarkDatabase.userId(i + 1), "pending"));
+        }
+    }
+
+    @Benchmark
+    public void writeMoviePage() throws Exception {
+        Json.write(sink, movies);
+    }
+
+    @Benchmark
+    public void writeFriendRequestPage() throws Exception {
+        Json.write(sink, friendRequests);
+    }
+}
@@ -0,0 +1,45 @@
+package com.example.moviedb;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// Request outcomes and latencies in 1ms buckets; anything slower than MAX_LATENCY_MILLIS shares
+// the last bucket
+final class LatencyRecorder {
+    static final int MAX_LATENCY_MILLIS = 30_000;
+
+    private final LongAdder succeeded = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final AtomicLongArray latencies = new AtomicLongArray(MAX_LATENCY_MILLIS + 1);
+
+    void record(long nanos, boolean success) {
+        long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+        latencies.incrementAndGet((int) Math.min(millis, MAX_LATENCY_MILLIS));
+        if (success) {
+            succeeded.increment();
+        } else {
+            failed.increment();
+        }
+    }
+
+    long total() {
+        return succeeded.sum() + failed.sum();
+    }
+
+    long failed() {
+        return failed.sum();
+    }
+
+    long percentile(double fraction) {
+        long rank = Math.max(1, (long) Math.ceil(total() * fraction));
+        long seen = 0;
+        for (int millis = 0; millis < latencies.length(); millis++) {
+            seen += latencies.get(millis);
+            if (seen >= rank) {
+                return millis;
+            }
+        }
+        return MAX_LATENCY_MILLIS;
+    }
+}
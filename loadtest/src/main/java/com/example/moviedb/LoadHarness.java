@@ -0,0 +1,319 @@
+package com.example.moviedb;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+// Runs the whole app offline: creates a fresh SQLite database, starts a stub TMDB server, starts
+// App in a child process against both, registers users and then sends a weighted mix of API calls
+// at a fixed rate. Prints throughput, error rate and latency percentiles per endpoint.
+// The app's output goes to target/loadtest/app.log. SERVER_THREAD_MODE and the JETTY_* variables
+// are passed on to the app.
+// Run with: java -jar loadtest/target/loadtest.jar [rate] [seconds] [tmdbLatencyMs] [users]
+public class LoadHarness {
+    static final String[] QUERIES = {
+        "star", "love", "night", "war", "alien", "story", "dark", "city", "king", "ghost"
+    };
+
+    private static final String APP_URL = "http://localhost:7000";
+    private static final String PASSWORD = "loadtest-password";
+    private static final int APP_START_TIMEOUT_SECONDS = 120;
+
+    private enum Call {
+        LOGIN("POST /api/login", 10),
+        SEARCH_TMDB("GET /api/searchTMDBMovies", 20),
+        SEARCH_LOCAL("GET /api/searchMovies", 10),
+        ADD_MOVIE("POST /api/addMovie", 15),
+        MOVE_TO_WATCHED("POST /api/moveToWatched", 5),
+        LIST_WATCHLIST("GET /api/listwatchlist", 15),
+        LIST_WATCHED("GET /api/listwatched", 10),
+        SEND_FRIEND_REQUEST("POST /api/sendFriendRequest", 5),
+        LIST_FRIEND_REQUESTS("GET /api/listFriendRequests", 10);
+
+        final String endpoint;
+        final int weight;
+
+        Call(String endpoint, int weight) {
+            this.endpoint = endpoint;
+            this.weight = weight;
+        }
+    }
+
+    private final HttpClient httpClient;
+    private final int users;
+    private final int totalWeight;
+    private final Map<Call, LatencyRecorder> recorders = new LinkedHashMap<>();
+    private final LatencyRecorder overall = new LatencyRecorder();
+    // Movies each user has added to their watchlist, so moveToWatched moves a real entry
+    private final Map<String, Deque<Integer>> watchlists = new ConcurrentHashMap<>();
+    private final AtomicLong lateStarts = new AtomicLong();
+
+    private LoadHarness(HttpClient httpClient, int users) {
+        this.httpClient = httpClient;
+        this.users = users;
+        int weights = 0;
+        for (Call call : Call.values()) {
+            recorders.put(call, new LatencyRecorder());
+            weights += call.weight;
+        }
+        this.totalWeight = weights;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int rate = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 60;
+        long tmdbLatencyMillis = args.length > 2 ? Long.parseLong(args[2]) : 100;
+        int users = args.length > 3 ? Integer.parseInt(args[3]) : 200;
+
+        Path workDirectory = Paths.get("target", "loadtest").toAbsolutePath();
+        Files.createDirectories(workDirectory);
+        Path propertiesFile = createDatabase(workDirectory);
+
+        StubTmdbServer tmdb = new StubTmdbServer(0, tmdbLatencyMillis, tmdbLatencyMillis / 4);
+        tmdb.start();
+        System.out.println("Stub TMDB listening on " + tmdb.baseUrl() + " with " + tmdbLatencyMillis + "ms latency");
+
+        Process app = startApp(propertiesFile, tmdb.baseUrl(), workDirectory.resolve("app.log"));
+        ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        try {
+            HttpClient httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10))
+                .executor(executor)
+                .build();
+            LoadHarness harness = new LoadHarness(httpClient, users);
+            harness.waitForApp(app);
+            harness.registerUsers();
+            harness.run(rate, seconds);
+            harness.report(rate, seconds);
+        } finally {
+            app.destroy();
+            if (!app.waitFor(10, TimeUnit.SECONDS)) {
+                app.destroyForcibly();
+            }
+            tmdb.stop();
+            executor.shutdownNow();
+        }
+        System.exit(0);
+    }
+
+    // A new SQLite file for every run, with the schema installed
+    private static Path createDatabase(Path workDirectory) throws Exception {
+        Path database = workDirectory.resolve("moviedb.sqlite3");
+        Files.deleteIfExists(database);
+
+        Properties properties = new Properties();
+        properties.setProperty("scalar.db.storage", "jdbc");
+        properties.setProperty("scalar.db.contact_points", "jdbc:sqlite:" + database + "?busy_timeout=50000");
+        properties.setProperty("scalar.db.username", "");
+        properties.setProperty("scalar.db.password", "");
+        properties.setProperty("scalar.db.transaction_manager_type", "consensus-commit");
+        SchemaInstaller.install(properties);
+
+        Path propertiesFile = workDirectory.resolve("scalardb.properties");
+        try (OutputStream out = Files.newOutputStream(propertiesFile)) {
+            properties.store(out, "Generated by LoadHarness");
+        }
+        return propertiesFile;
+    }
+
+    private static Process startApp(Path propertiesFile, String tmdbUrl, Path log) throws IOException {
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        ProcessBuilder builder = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), "com.example.moviedb.App");
+        builder.environment().put("SCALARDB_PROPERTIES", propertiesFile.toString());
+        builder.environment().put("TMDB_BASE_URL", tmdbUrl);
+        builder.environment().put("TMDB_API_KEY", "stub");
+        builder.redirectErrorStream(true);
+        builder.redirectOutput(log.toFile());
+        System.out.println("Starting the app, output in " + log);
+        return builder.start();
+    }
+
+    private void waitForApp(Process app) throws Exception {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(APP_START_TIMEOUT_SECONDS);
+        while (System.nanoTime() < deadline) {
+            if (!app.isAlive()) {
+                throw new IllegalStateException("The app exited with status " + app.exitValue() + ", see app.log");
+            }
+            try {
+                HttpResponse<Void> response = httpClient.send(get("/api/searchMovies?query=star"), HttpResponse.BodyHandlers.discarding());
+                if (response.statusCode() == 200) {
+                    return;
+                }
+            } catch (ConnectException e) {
+                // Not listening yet
+            }
+            Thread.sleep(500);
+        }
+        throw new IllegalStateException("The app did not start within " + APP_START_TIMEOUT_SECONDS + "s");
+    }
+
+    private void registerUsers() throws Exception {
+        for (int user = 0; user < users; user++) {
+            String body = Json.MAPPER.writeValueAsString(Map.of(
+                "userId", userId(user), "password", PASSWORD, "email", userId(user) + "@example.com"));
+            HttpResponse<Void> response = httpClient.send(post("/api/register", body), HttpResponse.BodyHandlers.discarding());
+            if (response.statusCode() != 201) {
+                throw new IllegalStateException("Registering " + userId(user) + " failed with status " + response.statusCode());
+            }
+        }
+        System.out.println("Registered " + users + " users");
+    }
+
+    // Open loop: request i is due at start + i / rate whether or not earlier ones have finished,
+    // and latency is measured from when it was due, so a stalled app shows up in the percentiles
+    // instead of slowing the load down
+    private void run(int rate, int seconds) throws Exception {
+        long interval = TimeUnit.SECONDS.toNanos(1) / rate;
+        long start = System.nanoTime();
+        long end = start + TimeUnit.SECONDS.toNanos(seconds);
+        List<CompletableFuture<?>> inFlight = new ArrayList<>();
+
+        for (long i = 0; ; i++) {
+            long due = start + i * interval;
+            if (due >= end) {
+                break;
+            }
+            long wait = due - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            } else if (-wait > interval) {
+                lateStarts.incrementAndGet();
+            }
+            inFlight.add(send(nextCall(), due));
+        }
+        CompletableFuture.allOf(inFlight.toArray(new CompletableFuture<?>[0]))
+            .get(LatencyRecorder.MAX_LATENCY_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    private Call nextCall() {
+        int pick = ThreadLocalRandom.current().nextInt(totalWeight);
+        for (Call call : Call.values()) {
+            pick -= call.weight;
+            if (pick < 0) {
+                return call;
+            }
+        }
+        throw new IllegalStateException("Weights do not add up");
+    }
+
+    private CompletableFuture<?> send(Call call, long due) throws IOException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        String userId = userId(random.nextInt(users));
+        String query = QUERIES[random.nextInt(QUERIES.length)];
+        int movieId = random.nextInt(StubTmdbServer.MOVIE_IDS) + 1;
+
+        HttpRequest request;
+        switch (call) {
+            case LOGIN:
+                request = post("/api/login", Json.MAPPER.writeValueAsString(Map.of("userId", userId, "password", PASSWORD)));
+                break;
+            case SEARCH_TMDB:
+                request = get("/api/searchTMDBMovies?query=" + encode(query));
+                break;
+            case SEARCH_LOCAL:
+                request = get("/api/searchMovies?query=" + encode(query));
+                break;
+            case ADD_MOVIE:
+                request = post("/api/addMovie", Json.MAPPER.writeValueAsString(Map.of(
+                    "userId", userId, "movieId", String.valueOf(movieId), "listName", "watchlist")));
+                break;
+            case MOVE_TO_WATCHED:
+                Integer added = watchlists.computeIfAbsent(userId, key -> new ConcurrentLinkedDeque<>()).pollFirst();
+                request = post("/api/moveToWatched", Json.MAPPER.writeValueAsString(Map.of(
+                    "userId", userId, "movieId", String.valueOf(added != null ? added : movieId))));
+                break;
+            case LIST_WATCHLIST:
+                request = get("/api/listwatchlist?userId=" + encode(userId));
+                break;
+            case LIST_WATCHED:
+                request = get("/api/listwatched?userId=" + encode(userId));
+                break;
+            case SEND_FRIEND_REQUEST:
+                request = post("/api/sendFriendRequest", Json.MAPPER.writeValueAsString(Map.of(
+                    "requesterId", userId, "requesteeId", userId(random.nextInt(users)))));
+                break;
+            case LIST_FRIEND_REQUESTS:
+                request = get("/api/listFriendRequests?userId=" + encode(userId));
+                break;
+            default:
+                throw new IllegalStateException("Unknown call " + call);
+        }
+
+        return httpClient.sendAsync(request, HttpResponse.BodyHandlers.discarding()).whenComplete((response, error) -> {
+            boolean success = error == null && response.statusCode() < 400;
+            long latency = System.nanoTime() - due;
+            recorders.get(call).record(latency, success);
+            overall.record(latency, success);
+            if (success && call == Call.ADD_MOVIE) {
+                watchlists.computeIfAbsent(userId, key -> new ConcurrentLinkedDeque<>()).addLast(movieId);
+            }
+        });
+    }
+
+    private void report(int rate, int seconds) {
+        System.out.printf("%nTarget %d requests/s for %ds%s%n", rate, seconds,
+            lateStarts.get() == 0 ? "" : ", " + lateStarts.get() + " requests sent late by the load generator");
+        System.out.printf("%-30s %9s %8s %8s %7s %7s %7s %7s%n", "endpoint", "requests", "req/s", "errors", "p50", "p95", "p99", "max");
+
+        for (Map.Entry<Call, LatencyRecorder> entry : recorders.entrySet()) {
+            printRow(entry.getKey().endpoint, entry.getValue(), seconds);
+        }
+        printRow("all", overall, seconds);
+    }
+
+    private static void printRow(String endpoint, LatencyRecorder recorder, int seconds) {
+        long total = recorder.total();
+        System.out.printf("%-30s %9d %8.1f %7.2f%% %5dms %5dms %5dms %5dms%n",
+            endpoint, total, (double) total / seconds, total == 0 ? 0 : 100.0 * recorder.failed() / total,
+            recorder.percentile(0.50), recorder.percentile(0.95), recorder.percentile(0.99), recorder.percentile(1.0));
+    }
+
+    private static String userId(int user) {
+        return String.format("load-user-%04d", user);
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    private static HttpRequest get(String path) {
+        return HttpRequest.newBuilder(URI.create(APP_URL + path))
+            .timeout(Duration.ofMillis(LatencyRecorder.MAX_LATENCY_MILLIS))
+            .GET()
+            .build();
+    }
+
+    private static HttpRequest post(String path, String json) {
+        return HttpRequest.newBuilder(URI.create(APP_URL + path))
+            .timeout(Duration.ofMillis(LatencyRecorder.MAX_LATENCY_MILLIS))
+            .header("Content-Type", "application/json")
+            .POST(HttpRequest.BodyPublishers.ofString(json))
+            .build();
+    }
+}
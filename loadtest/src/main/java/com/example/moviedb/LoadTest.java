@@ -0,0 +1,104 @@
+package com.example.moviedb;
+
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Keeps a fixed number of requests in flight against a running app and reports throughput and
+// latency percentiles. Start the app once with SERVER_THREAD_MODE=platform and once with
+// SERVER_THREAD_MODE=virtual and run this against each to compare.
+// Run with: java -cp loadtest/target/loadtest.jar com.example.moviedb.LoadTest [baseUrl] [connections] [seconds] [userId]
+public class LoadTest {
+    private static final String[] QUERIES = {
+        "star", "love", "the matrix", "night", "war", "alien", "toy story", "batman", "amelie", "godfather"
+    };
+
+    private final HttpClient httpClient;
+    private final String baseUrl;
+    private final String userId;
+    private final long deadline;
+
+    private final LatencyRecorder latencies = new LatencyRecorder();
+
+    private LoadTest(HttpClient httpClient, String baseUrl, String userId, long deadline) {
+        this.httpClient = httpClient;
+        this.baseUrl = baseUrl;
+        this.userId = userId;
+        this.deadline = deadline;
+    }
+
+    public static void main(String[] args) throws Exception {
+        String baseUrl = args.length > 0 ? args[0] : "http://localhost:7000";
+        int connections = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 60;
+        String userId = args.length > 3 ? args[3] : "loadtest-user";
+
+        ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        HttpClient httpClient = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(10))
+            .executor(executor)
+            .build();
+
+        LoadTest loadTest = new LoadTest(httpClient, baseUrl, userId, System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds));
+        CountDownLatch done = new CountDownLatch(connections);
+        for (int i = 0; i < connections; i++) {
+            loadTest.next(done);
+        }
+        done.await();
+        executor.shutdownNow();
+
+        loadTest.report(connections, seconds);
+        System.exit(0);
+    }
+
+    // Each connection sends its next request as soon as the previous one completes
+    private void next(CountDownLatch done) {
+        if (System.nanoTime() >= deadline) {
+            done.countDown();
+            return;
+        }
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + nextPath()))
+            .timeout(Duration.ofMillis(LatencyRecorder.MAX_LATENCY_MILLIS))
+            .GET()
+            .build();
+        long start = System.nanoTime();
+        httpClient.sendAsync(request, HttpResponse.BodyHandlers.discarding()).whenComplete((response, error) -> {
+            latencies.record(System.nanoTime() - start, error == null && response.statusCode() < 400);
+            next(done);
+        });
+    }
+
+    // Half TMDB searches, 35% list pages and the rest local movie searches
+    private String nextPath() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        String query = URLEncoder.encode(QUERIES[random.nextInt(QUERIES.length)], StandardCharsets.UTF_8);
+        int pick = random.nextInt(100);
+        if (pick < 50) {
+            return "/api/searchTMDBMovies?query=" + query;
+        } else if (pick < 70) {
+            return "/api/listwatchlist?userId=" + userId + "&limit=50";
+        } else if (pick < 85) {
+            return "/api/listwatched?userId=" + userId + "&limit=50";
+        } else {
+            return "/api/searchMovies?query=" + query;
+        }
+    }
+
+    private void report(int connections, int seconds) {
+        long total = latencies.total();
+        System.out.printf("%d connections for %ds: %d requests, %d failed, %.0f requests/s%n",
+            connections, seconds, total, latencies.failed(), (double) total / seconds);
+        System.out.printf("latency p50 %dms, p95 %dms, p99 %dms, max %dms%n",
+            latencies.percentile(0.50), latencies.percentile(0.95), latencies.percentile(0.99), latencies.percentile(1.0));
+    }
+}
@@ -0,0 +1,142 @@
+package com.example.moviedb;
+
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Answers the two TMDB calls the app makes, /search/movie and /movie/{id}, with generated movies
+// after a configurable delay. Delayed responses are sent from a scheduler, so slow responses do
+// not tie up server threads.
+public class StubTmdbServer {
+    static final int MOVIE_IDS = 5_000;
+    private static final int SEARCH_RESULTS = 20;
+    private static final int[] GENRE_IDS = {12, 14, 18, 28, 35, 878};
+
+    private final HttpServer server;
+    private final ScheduledExecutorService scheduler;
+    private final long latencyMillis;
+    private final long jitterMillis;
+
+    public StubTmdbServer(int port, long latencyMillis, long jitterMillis) throws IOException {
+        this.latencyMillis = latencyMillis;
+        this.jitterMillis = jitterMillis;
+        this.scheduler = Executors.newScheduledThreadPool(4, runnable -> {
+            Thread thread = new Thread(runnable, "stub-tmdb");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 1024);
+        server.setExecutor(scheduler);
+        server.createContext("/search/movie", exchange -> delay(exchange, () -> search(exchange)));
+        server.createContext("/movie/", exchange -> delay(exchange, () -> details(exchange)));
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public String baseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    public void stop() {
+        server.stop(0);
+        scheduler.shutdownNow();
+    }
+
+    private interface Response {
+        void send() throws IOException;
+    }
+
+    private void delay(HttpExchange exchange, Response response) {
+        long delay = latencyMillis + (jitterMillis > 0 ? ThreadLocalRandom.current().nextLong(jitterMillis + 1) : 0);
+        scheduler.schedule(() -> {
+            try {
+                response.send();
+            } catch (Exception e) {
+                System.out.println("Stub TMDB failed to answer " + exchange.getRequestURI().getPath() + ": " + e.getMessage());
+            } finally {
+                exchange.close();
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    // Results depend only on the query, so repeated searches see the same movies
+    private void search(HttpExchange exchange) throws IOException {
+        String query = queryParam(exchange.getRequestURI(), "query");
+        int first = Math.floorMod(query.hashCode(), MOVIE_IDS - SEARCH_RESULTS) + 1;
+
+        ObjectNode body = Json.MAPPER.createObjectNode();
+        body.put("page", 1);
+        ArrayNode results = body.putArray("results");
+        for (int movieId = first; movieId < first + SEARCH_RESULTS; movieId++) {
+            ObjectNode movie = movieNode(movieId);
+            ArrayNode genreIds = movie.putArray("genre_ids");
+            genreIds.add(GENRE_IDS[movieId % GENRE_IDS.length]);
+            results.add(movie);
+        }
+        body.put("total_results", SEARCH_RESULTS);
+        send(exchange, 200, body);
+    }
+
+    private void details(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        int movieId;
+        try {
+            movieId = Integer.parseInt(path.substring("/movie/".length()));
+        } catch (NumberFormatException e) {
+            movieId = 0;
+        }
+        if (movieId <= 0) {
+            send(exchange, 404, Json.MAPPER.createObjectNode().put("status_message", "Not found"));
+            return;
+        }
+
+        ObjectNode movie = movieNode(movieId);
+        ArrayNode genres = movie.putArray("genres");
+        genres.addObject().put("id", GENRE_IDS[movieId % GENRE_IDS.length]).put("name", "Genre");
+        movie.put("overview", "A generated movie for load tests");
+        send(exchange, 200, movie);
+    }
+
+    private static ObjectNode movieNode(int movieId) {
+        ObjectNode movie = Json.MAPPER.createObjectNode();
+        movie.put("id", movieId);
+        movie.put("title", LoadHarness.QUERIES[movieId % LoadHarness.QUERIES.length] + " movie " + movieId);
+        movie.put("release_date", String.format("%d-01-01", 1950 + movieId % 70));
+        movie.put("poster_path", "/stub" + movieId + ".jpg");
+        return movie;
+    }
+
+    private static void send(HttpExchange exchange, int status, ObjectNode body) throws IOException {
+        byte[] bytes = Json.MAPPER.writeValueAsBytes(body);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static String queryParam(URI uri, String name) {
+        String query = uri.getQuery();
+        if (query != null) {
+            for (String pair : query.split("&")) {
+                int equals = pair.indexOf('=');
+                if (equals > 0 && pair.substring(0, equals).equals(name)) {
+                    return pair.substring(equals + 1);
+                }
+            }
+        }
+        return "";
+    }
+}
@@ -1,25 +1,64 @@
 package com.example.moviedb;
 
-import java.net.URLEncoder;
-import java.nio.charset.StandardCharsets;
-import java.util.ArrayList;
-import java.util.List;
-
-import com.fasterxml.jackson.databind.JsonNode;
-
 import io.javalin.Javalin;
 import io.javalin.http.Context;
+import io.javalin.http.HandlerType;
+import io.javalin.http.sse.SseClient;
 import io.javalin.http.staticfiles.Location;
+import io.javalin.plugin.json.JavalinJackson;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.function.LongPredicate;
 
 public class App {
-    private static MovieService movieService = new MovieService();
-    private static UserService userService = new UserService();
+    private static MovieService movieService;
+    private static UserService userService;
+    private static EventHub events;
+    private static ChangeLogCompactor changeLogCompactor;
+
+    private static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    private static final int USER_SEARCH_DEFAULT_LIMIT = 20;
+    private static final int MOVIE_SEARCH_DEFAULT_LIMIT = 20;
+    private static final int LIST_DEFAULT_LIMIT = 50;
+    private static final int MAX_PAGE_LIMIT = 100;
+    private static final int MAX_BATCH_MOVIES = 200;
+    private static final int CHANGES_DEFAULT_LIMIT = 100;
+    private static final int MAX_CHANGES_LIMIT = 500;
+    private static final String PROMETHEUS_CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    private static final Metrics.Counter REQUESTS =
+        Metrics.REGISTRY.counter("http_requests_total", "HTTP requests by route and status", "method", "route", "status");
+    private static final Metrics.Histogram REQUEST_DURATION =
+        Metrics.REGISTRY.histogram("http_request_duration_seconds", "HTTP request latency by route", "method", "route");
+
+    public static void main(String[] args) throws Exception {
+        // One ScalarDBOperations, and so one transaction manager and connection pool, for the whole app
+        ScalarDBOperations scalarDBOperations = new ScalarDBOperations();
+        scalarDBOperations.initialize();
+        movieService = new MovieService(scalarDBOperations);
+        events = EventHub.fromEnvironment();
+        userService = new UserService(scalarDBOperations, events);
+        changeLogCompactor = ChangeLogCompactor.fromEnvironment(scalarDBOperations);
+        changeLogCompactor.start();
+
+        ServerThreads serverThreads = ServerThreads.fromEnvironment();
 
-    public static void main(String[] args) {
         Javalin app = Javalin.create(config -> {
             config.addStaticFiles("/public", Location.CLASSPATH);
+            config.jsonMapper(new JavalinJackson(Json.MAPPER));
+            config.server(serverThreads::createServer);
+            config.requestLogger(App::recordRequest);
         }).start(7000);
 
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            app.stop();
+            serverThreads.close();
+            events.close();
+            changeLogCompactor.close();
+            movieService.close();
+            scalarDBOperations.close();
+        }, "shutdown"));
+
         // Define routes
         app.get("/", ctx -> ctx.render("views/login.html"));
         app.get("/register", ctx -> ctx.render("views/register.html"));
@@ -29,26 +68,35 @@ public class App {
         app.get("/search", ctx -> ctx.render("views/search.html"));
         app.get("/friends", ctx -> ctx.render("views/friends.html"));
 
-        // API routes
-        app.post("/api/login", App::handleLogin);
-        app.post("/api/register", App::handleRegister);
-        app.post("/api/addMovie", App::handleAddMovie);
-        app.delete("/api/deleteMovie", App::handleDeleteMovie);
-        app.get("/api/searchMovies", App::handleSearchLocalMovies); 
+        // API routes. Handlers that block on ScalarDB run through serverThreads; TMDB search is
+        // already asynchronous and the stats handlers only read counters.
+        app.post("/api/login", serverThreads.blocking(App::handleLogin));
+        app.post("/api/register", serverThreads.blocking(App::handleRegister));
+        app.post("/api/addMovie", serverThreads.blocking(App::handleAddMovie));
+        app.delete("/api/deleteMovie", serverThreads.blocking(App::handleDeleteMovie));
+        app.get("/api/searchMovies", serverThreads.blocking(App::handleSearchLocalMovies));
         app.get("/api/searchTMDBMovies", App::handleSearchTMDBMovies);
-        app.get("/api/listwatchlist", App::handleListWatchlist);
-        app.get("/api/listwatched", App::handleListWatched);
-        app.post("/api/moveToWatched", App::handleMoveToWatched);
-        app.get("/api/userProfile", App::handleUserProfile);
-
-        app.get("/api/searchUsers", App::handleSearchUsers);
-        app.post("/api/sendFriendRequest", App::handleSendFriendRequest);
-        app.post("/api/acceptFriendRequest", App::handleAcceptFriendRequest);
-        app.post("/api/declineFriendRequest", App::handleDeclineFriendRequest);
-        app.post("/api/removeFriendRequest", App::handleRemoveFriendRequest);
-        app.post("/api/removeFriend", App::handleRemoveFriend);
-        app.get("/api/listFriends", App::handleListFriends);
-        app.get("/api/listFriendRequests", App::handleListFriendRequests);
+        app.get("/api/listwatchlist", serverThreads.blocking(App::handleListWatchlist));
+        app.get("/api/listwatched", serverThreads.blocking(App::handleListWatched));
+        app.post("/api/moveToWatched", serverThreads.blocking(App::handleMoveToWatched));
+        app.post("/api/listBatch", serverThreads.blocking(App::handleListBatch));
+        app.get("/api/changes", serverThreads.blocking(App::handleChanges));
+        app.get("/api/userProfile", serverThreads.blocking(App::handleUserProfile));
+        app.get("/api/profileView", serverThreads.blocking(App::handleProfileView));
+        app.get("/api/cacheStats", App::handleCacheStats);
+        app.get("/api/transactionStats", App::handleTransactionStats);
+        app.get("/metrics", App::handleMetrics);
+
+        app.get("/api/searchUsers", serverThreads.blocking(App::handleSearchUsers));
+        app.get("/api/userSearchView", serverThreads.blocking(App::handleUserSearchView));
+        app.post("/api/sendFriendRequest", serverThreads.blocking(App::handleSendFriendRequest));
+        app.post("/api/acceptFriendRequest", serverThreads.blocking(App::handleAcceptFriendRequest));
+        app.post("/api/declineFriendRequest", serverThreads.blocking(App::handleDeclineFriendRequest));
+        app.post("/api/removeFriendRequest", serverThreads.blocking(App::handleRemoveFriendRequest));
+        app.post("/api/removeFriend", serverThreads.blocking(App::handleRemoveFriend));
+        app.get("/api/listFriends", serverThreads.blocking(App::handleListFriends));
+        app.get("/api/listFriendRequests", serverThreads.blocking(App::handleListFriendRequests));
+        app.sse("/api/events", App::handleEvents);
     }
 
     private static class RegisterRequest {
@@ -68,7 +116,14 @@ public class App {
         public String listName;
     }
     
-    private static class FriendRequest {
+    private static class ListBatchRequest {
+        public String userId;
+        public String operation;
+        public String listName;
+        public List<Integer> movieIds;
+    }
+
+    private static class FriendRequestBody {
         public String requesterId;
         public String requesteeId;
     }
@@ -146,12 +201,42 @@ public class App {
 
         try {
             var userProfile = userService.getUserProfile(userId);
-            ctx.json(userProfile);
+            Json.respond(ctx, userProfile);
         } catch (Exception e) {
             ctx.status(500).result("Failed to get user profile");
         }
     }
 
+    private static void handleProfileView(Context ctx) {
+        String userId = ctx.queryParam("userId");
+
+        // Input validation
+        if (userId == null || userId.trim().isEmpty()) {
+            ctx.status(400).result("User ID is required");
+            return;
+        }
+
+        int limit;
+        try {
+            limit = pageLimit(ctx, LIST_DEFAULT_LIMIT);
+        } catch (NumberFormatException e) {
+            ctx.status(400).result("Invalid limit");
+            return;
+        }
+
+        try {
+            ProfileView profileView = userService.getProfileView(userId, limit);
+            if (profileView == null) {
+                ctx.status(404).result("User not found");
+                return;
+            }
+            Json.respond(ctx, profileView);
+        } catch (Exception e) {
+            e.printStackTrace();
+            ctx.status(500).result("Failed to get profile view");
+        }
+    }
+
     //endregion
 
     //region add/remove movies
@@ -221,6 +306,38 @@ public class App {
         }
     }
 
+    // Adds, removes or moves up to MAX_BATCH_MOVIES movies and responds with each movie's outcome
+    private static void handleListBatch(Context ctx) throws IOException {
+        ListBatchRequest request = ctx.bodyAsClass(ListBatchRequest.class);
+
+        if (request.userId == null || request.userId.trim().isEmpty()) {
+            ctx.status(400).result("User ID is required");
+            return;
+        }
+        if (!"add".equals(request.operation) && !"remove".equals(request.operation) && !"move".equals(request.operation)) {
+            ctx.status(400).result("Operation must be add, remove or move");
+            return;
+        }
+        if (!request.operation.equals("move") && !"watchlist".equals(request.listName) && !"watched".equals(request.listName)) {
+            ctx.status(400).result("List name must be watchlist or watched");
+            return;
+        }
+        if (request.movieIds == null || request.movieIds.isEmpty() || request.movieIds.contains(null)) {
+            ctx.status(400).result("Movie IDs are required");
+            return;
+        }
+        if (request.movieIds.size() > MAX_BATCH_MOVIES) {
+            ctx.status(400).result("At most " + MAX_BATCH_MOVIES + " movies per batch");
+            return;
+        }
+
+        try {
+            Json.respond(ctx, movieService.applyListBatch(request.userId, request.operation, request.listName, request.movieIds));
+        } catch (Exception e) {
+            ctx.status(500).result("Failed to update list");
+        }
+    }
+
     //endregion
 
     //region search & Lists
@@ -236,16 +353,22 @@ public class App {
             return;
         }
     
+        int limit;
+        int offset;
         try {
-            JsonNode localResults = movieService.searchLocalMovies(query);
-    
-            // Ensure results are in the expected format
-            if (localResults == null || !localResults.isArray()) {
-                ctx.status(500).result("Invalid response format from local search");
-                return;
+            limit = pageLimit(ctx, MOVIE_SEARCH_DEFAULT_LIMIT);
+            String cursor = ctx.queryParam("cursor");
+            offset = cursor == null || cursor.trim().isEmpty() ? 0 : Integer.parseInt(cursor.trim());
+            if (offset < 0) {
+                throw new NumberFormatException("cursor must not be negative");
             }
+        } catch (NumberFormatException e) {
+            ctx.status(400).result("Invalid limit or cursor");
+            return;
+        }
     
-            ctx.json(localResults);
+        try {
+            respondWithPage(ctx, movieService.searchLocalMovies(query, limit, offset));
         } catch (Exception e) {
             e.printStackTrace(); // Log the stack trace for debugging
             ctx.status(500).result("Failed to search local movies");
@@ -263,27 +386,18 @@ public class App {
             return;
         }
     
-        try {
-            String encodedQuery = URLEncoder.encode(query, StandardCharsets.UTF_8.toString());
-            JsonNode tmdbResults = movieService.searchTMDBMovies(encodedQuery);
-    
-            // Extract only the first 20 results
-            JsonNode results = tmdbResults.get("results");
-            if (results == null || !results.isArray()) {
+        // Respond once TMDB answers, without holding a Jetty thread meanwhile
+        ctx.future(movieService.searchTMDBMovies(query).handle((results, error) -> {
+            if (error != null) {
+                error.printStackTrace();
+                ctx.status(500).result("Failed to search TMDB movies");
+            } else if (results == null || !results.isArray()) {
                 ctx.status(500).result("Invalid response format from TMDB");
-                return;
+            } else {
+                ctx.json(results);
             }
-    
-            List<JsonNode> limitedResults = new ArrayList<>();
-            for (int i = 0; i < Math.min(20, results.size()); i++) {
-                limitedResults.add(results.get(i));
-            }
-    
-            ctx.json(limitedResults.toArray());
-        } catch (Exception e) {
-            e.printStackTrace();
-            ctx.status(500).result("Failed to search TMDB movies");
-        }
+            return null;
+        }), result -> {});
     }
 
     private static void handleListWatchlist(Context ctx) {
@@ -295,9 +409,19 @@ public class App {
             return;
         }
 
+        int limit;
+        Integer cursor;
+        try {
+            limit = pageLimit(ctx, LIST_DEFAULT_LIMIT);
+            cursor = movieCursor(ctx);
+        } catch (NumberFormatException e) {
+            ctx.status(400).result("Invalid limit or cursor");
+            return;
+        }
+
         try {
-            JsonNode watchlist = movieService.listMoviesInUserList(userId, "watchlist");
-            ctx.json(watchlist);
+            respondWithVersionedPage(ctx, "watchlist",
+                movieService.listMoviesInUserList(userId, "watchlist", limit, cursor, unchangedFor(ctx, "watchlist")));
         } catch (Exception e) {
             e.printStackTrace(); // Log the stack trace for debugging
             ctx.status(500).result("Failed to list watchlist");
@@ -313,14 +437,29 @@ public class App {
             return;
         }
 
+        int limit;
+        Integer cursor;
         try {
-            var watched = movieService.listMoviesInUserList(userId, "watched");
-            ctx.json(watched);
+            limit = pageLimit(ctx, LIST_DEFAULT_LIMIT);
+            cursor = movieCursor(ctx);
+        } catch (NumberFormatException e) {
+            ctx.status(400).result("Invalid limit or cursor");
+            return;
+        }
+
+        try {
+            respondWithVersionedPage(ctx, "watched",
+                movieService.listMoviesInUserList(userId, "watched", limit, cursor, unchangedFor(ctx, "watched")));
         } catch (Exception e) {
             ctx.status(500).result("Failed to list watched");
         }
     }
 
+    private static Integer movieCursor(Context ctx) {
+        String cursor = ctx.queryParam("cursor");
+        return cursor == null || cursor.trim().isEmpty() ? null : Integer.valueOf(cursor.trim());
+    }
+
     private static void handleMoveToWatched(Context ctx) {
         addMovieRequest addMovieRequest = ctx.bodyAsClass(addMovieRequest.class);
 
@@ -348,6 +487,28 @@ public class App {
         }
     }
 
+    private static void handleCacheStats(Context ctx) throws IOException {
+        Json.respond(ctx, movieService.getCacheStats());
+    }
+
+    private static void handleTransactionStats(Context ctx) throws IOException {
+        Json.respond(ctx, movieService.getTransactionStats());
+    }
+
+    private static void handleMetrics(Context ctx) {
+        ctx.contentType(PROMETHEUS_CONTENT_TYPE).result(Metrics.REGISTRY.render());
+    }
+
+    // Called once the response is complete, including responses from async handlers. Routes are
+    // labelled by their path pattern; static files and unknown paths share one label.
+    private static void recordRequest(Context ctx, Float executionTimeMs) {
+        // Without a matching endpoint the handler type stays BEFORE and there is no path pattern
+        String route = ctx.handlerType() == HandlerType.BEFORE ? "other" : ctx.endpointHandlerPath();
+        String method = ctx.method();
+        REQUESTS.labels(method, route, String.valueOf(ctx.status())).increment();
+        REQUEST_DURATION.labels(method, route).observeNanos((long) (executionTimeMs * 1_000_000L));
+    }
+
     //endregion
     
     //region
@@ -359,16 +520,155 @@ public class App {
             return;
         }
 
+        int limit;
+        try {
+            limit = pageLimit(ctx, USER_SEARCH_DEFAULT_LIMIT);
+        } catch (NumberFormatException e) {
+            ctx.status(400).result("Invalid limit");
+            return;
+        }
+
+        try {
+            respondWithPage(ctx, userService.searchUsers(query, limit, ctx.queryParam("cursor")));
+        } catch (Exception e) {
+            ctx.status(500).result("Failed to search users");
+        }
+    }
+
+    private static void handleUserSearchView(Context ctx) {
+        String userId = ctx.queryParam("userId");
+        String query = ctx.queryParam("query");
+        if (userId == null || userId.trim().isEmpty()) {
+            ctx.status(400).result("User ID is required");
+            return;
+        }
+        if (query == null || query.trim().isEmpty()) {
+            ctx.status(400).result("Search query is required");
+            return;
+        }
+
+        int limit;
+        try {
+            limit = pageLimit(ctx, USER_SEARCH_DEFAULT_LIMIT);
+        } catch (NumberFormatException e) {
+            ctx.status(400).result("Invalid limit");
+            return;
+        }
+
         try {
-            JsonNode users = userService.searchUsers(query);
-            ctx.json(users);
+            respondWithPage(ctx, userService.searchUsersForViewer(userId, query, limit, textCursor(ctx)));
         } catch (Exception e) {
+            e.printStackTrace();
             ctx.status(500).result("Failed to search users");
         }
     }
 
+    // Returns the user's list changes after the since cursor, or a page of a snapshot of all lists
+    // when the cursor is missing or too old. The client pages through a snapshot with its cursor,
+    // then stores seq from the response as its next since.
+    private static void handleChanges(Context ctx) {
+        String userId = ctx.queryParam("userId");
+        if (userId == null || userId.trim().isEmpty()) {
+            ctx.status(400).result("User ID is required");
+            return;
+        }
+
+        long since;
+        int limit;
+        try {
+            String sinceParam = ctx.queryParam("since");
+            since = sinceParam == null || sinceParam.trim().isEmpty() ? 0 : Long.parseLong(sinceParam.trim());
+            String limitParam = ctx.queryParam("limit");
+            limit = limitParam == null || limitParam.trim().isEmpty() ? CHANGES_DEFAULT_LIMIT : Integer.parseInt(limitParam.trim());
+        } catch (NumberFormatException e) {
+            ctx.status(400).result("Invalid since or limit");
+            return;
+        }
+        if (since < 0 || limit <= 0) {
+            ctx.status(400).result("Invalid since or limit");
+            return;
+        }
+
+        try {
+            Json.respond(ctx, movieService.getChanges(userId, since, Math.min(limit, MAX_CHANGES_LIMIT), textCursor(ctx)));
+        } catch (IllegalArgumentException e) {
+            ctx.status(400).result("Invalid cursor");
+        } catch (Exception e) {
+            e.printStackTrace();
+            ctx.status(500).result("Failed to get changes");
+        }
+    }
+
+    private static int pageLimit(Context ctx, int defaultLimit) {
+        String limitParam = ctx.queryParam("limit");
+        if (limitParam == null || limitParam.trim().isEmpty()) {
+            return defaultLimit;
+        }
+        int limit = Integer.parseInt(limitParam.trim());
+        if (limit <= 0) {
+            throw new NumberFormatException("limit must be positive");
+        }
+        return Math.min(limit, MAX_PAGE_LIMIT);
+    }
+
+    // The body stays a plain JSON array; the cursor for the next page goes in a header
+    private static void respondWithPage(Context ctx, Page<?> page) throws IOException {
+        if (page.getNextCursor() != null) {
+            ctx.header(NEXT_CURSOR_HEADER, page.getNextCursor());
+        }
+        Json.respond(ctx, page.getItems());
+    }
+
+    // Tells the list read whether the client already has a version, so the page is skipped then
+    private static LongPredicate unchangedFor(Context ctx, String list) {
+        String ifNoneMatch = ctx.header("If-None-Match");
+        return version -> etagMatches(ifNoneMatch, listEtag(list, version));
+    }
+
+    // Sets the ETag for the version read with the page and answers 304 when the client already
+    // had it. no-cache makes browsers revalidate.
+    private static void respondWithVersionedPage(Context ctx, String list, Page<?> page) throws IOException {
+        if (!page.isVersioned()) {
+            ctx.header("Cache-Control", "no-store");
+            respondWithPage(ctx, page);
+            return;
+        }
+        ctx.header("ETag", listEtag(list, page.getVersion()));
+        ctx.header("Cache-Control", "no-cache");
+        if (page.isUnchanged()) {
+            ctx.status(304);
+            return;
+        }
+        respondWithPage(ctx, page);
+    }
+
+    static String listEtag(String list, long version) {
+        return "\"" + list + "-" + Long.toHexString(version) + "\"";
+    }
+
+    static boolean etagMatches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String trimmed = candidate.trim();
+            if (trimmed.startsWith("W/")) {
+                trimmed = trimmed.substring(2);
+            }
+            if (trimmed.equals("*") || trimmed.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String textCursor(Context ctx) {
+        String cursor = ctx.queryParam("cursor");
+        return cursor == null || cursor.isEmpty() ? null : cursor;
+    }
+
     private static void handleSendFriendRequest(Context ctx) {
-        FriendRequest friendRequest = ctx.bodyAsClass(FriendRequest.class);
+        FriendRequestBody friendRequest = ctx.bodyAsClass(FriendRequestBody.class);
 
         String requesterId = friendRequest.requesterId;
         String requesteeId = friendRequest.requesteeId;
@@ -387,7 +687,7 @@ public class App {
     }
 
     private static void handleAcceptFriendRequest(Context ctx) {
-        FriendRequest friendRequest = ctx.bodyAsClass(FriendRequest.class);
+        FriendRequestBody friendRequest = ctx.bodyAsClass(FriendRequestBody.class);
 
         String requesterId = friendRequest.requesterId;
         String requesteeId = friendRequest.requesteeId;
@@ -406,7 +706,7 @@ public class App {
     }
 
     private static void handleDeclineFriendRequest(Context ctx) {
-        FriendRequest friendRequest = ctx.bodyAsClass(FriendRequest.class);
+        FriendRequestBody friendRequest = ctx.bodyAsClass(FriendRequestBody.class);
 
         String requesterId = friendRequest.requesterId;
         String requesteeId = friendRequest.requesteeId;
@@ -425,7 +725,7 @@ public class App {
     }
 
     private static void handleRemoveFriendRequest(Context ctx) {
-        FriendRequest friendRequest = ctx.bodyAsClass(FriendRequest.class);
+        FriendRequestBody friendRequest = ctx.bodyAsClass(FriendRequestBody.class);
 
         String requesterId = friendRequest.requesterId;
         String requesteeId = friendRequest.requesteeId;
@@ -469,14 +769,51 @@ public class App {
             return;
         }
 
+        int limit;
+        try {
+            limit = pageLimit(ctx, LIST_DEFAULT_LIMIT);
+        } catch (NumberFormatException e) {
+            ctx.status(400).result("Invalid limit");
+            return;
+        }
+
         try {
-            JsonNode friends = userService.listAllFriends(userId);
-            ctx.json(friends);
+            respondWithVersionedPage(ctx, "friends",
+                userService.listAllFriends(userId, limit, textCursor(ctx), unchangedFor(ctx, "friends")));
         } catch (Exception e) {
             ctx.status(500).result("Failed to list friends");
         }
     }
 
+    // Streams the user's friend request and friendship events. The handler returns straight away;
+    // Jetty keeps the connection open without a thread and EventHub writes to it.
+    private static void handleEvents(SseClient client) {
+        String userId = client.ctx.queryParam("userId");
+        if (userId == null || userId.trim().isEmpty()) {
+            client.sendEvent("error", "User ID is required");
+            client.close();
+            return;
+        }
+
+        EventHub.Connection connection = userService.subscribe(userId, new EventHub.Sink() {
+            @Override
+            public void send(String event, String data) {
+                client.sendEvent(event, data);
+            }
+
+            @Override
+            public void heartbeat() {
+                client.sendComment("heartbeat");
+            }
+
+            @Override
+            public void close() {
+                client.close();
+            }
+        });
+        client.onClose(connection::closed);
+    }
+
     private static void handleListFriendRequests(Context ctx) {
         String userId = ctx.queryParam("userId");
         if (userId == null || userId.trim().isEmpty()) {
@@ -484,9 +821,19 @@ public class App {
             return;
         }
 
+        int limit;
+        try {
+            limit = pageLimit(ctx, LIST_DEFAULT_LIMIT);
+        } catch (NumberFormatException e) {
+            ctx.status(400).result("Invalid limit");
+            return;
+        }
+
         try {
-            JsonNode friendRequests = userService.listFriendRequests(userId);
-            ctx.json(friendRequests);
+            respondWithVersionedPage(ctx, "friend-requests",
+                userService.listFriendRequests(userId, limit, textCursor(ctx), unchangedFor(ctx, "friend-requests")));
+        } catch (IllegalArgumentException e) {
+            ctx.status(400).result("Invalid cursor");
         } catch (Exception e) {
             System.out.println(e);
             ctx.status(500).result("Failed to list friend requests");
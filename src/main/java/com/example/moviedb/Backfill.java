@@ -0,0 +1,33 @@
+package com.example.moviedb;
+
+// One-time backfills for tables added after data already exists.
+// Run with: mvn exec:java -Dexec.mainClass=com.example.moviedb.Backfill -Dexec.args="<name>"
+public class Backfill {
+    private static final int CHUNK_SIZE = 100;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 1) {
+            System.err.println("Usage: Backfill friend-requests-by-requestee|user-search-index");
+            System.exit(1);
+        }
+
+        ScalarDBOperations scalarDBOperations = new ScalarDBOperations();
+        scalarDBOperations.initialize();
+
+        switch (args[0]) {
+            case "friend-requests-by-requestee":
+                int requests = scalarDBOperations.backfillFriendRequestsByRequestee(CHUNK_SIZE);
+                System.out.println("Backfilled " + requests + " friend requests into friend_requests_by_requestee");
+                break;
+            case "user-search-index":
+                int users = scalarDBOperations.backfillUserSearchIndex(CHUNK_SIZE);
+                System.out.println("Indexed " + users + " users into user_search_index");
+                break;
+            default:
+                System.err.println("Unknown backfill: " + args[0]);
+                System.exit(1);
+        }
+        scalarDBOperations.close();
+        System.exit(0);
+    }
+}
@@ -0,0 +1,240 @@
+package com.example.moviedb;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPInputStream;
+
+// Loads a TMDB daily movie export (movie_ids_MM_DD_YYYY.json.gz, one JSON object per line) into the
+// movies table. Lines are written in chunks, several chunks at a time, each chunk in one transaction.
+// The line up to which every chunk has committed is saved to a checkpoint file, so an interrupted
+// import carries on from there when run again.
+// The export only has ids and original titles, so imported rows have no release date, poster or
+// genres and are marked sparse; adding or prefetching such a movie fetches its TMDB details and
+// fills the row in. Movies already in the table are left as they are.
+// Run with: mvn exec:java -Dexec.mainClass=com.example.moviedb.CatalogImport -Dexec.args="<export.json.gz> [checkpoint file]"
+public class CatalogImport {
+    private static final int CHUNK_SIZE = envInt("IMPORT_CHUNK_SIZE", 500);
+    private static final int PARALLELISM = envInt("IMPORT_PARALLELISM", 8);
+    private static final long REPORT_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    private final ScalarDBOperations scalarDBOperations;
+    private final Checkpoint checkpoint;
+    private final ExecutorService executor = Executors.newFixedThreadPool(PARALLELISM, runnable -> {
+        Thread thread = new Thread(runnable, "catalog-import");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // Keeps the reader at most one chunk per thread ahead of the writers
+    private final Semaphore chunksInFlight = new Semaphore(PARALLELISM * 2);
+    private final LongAdder written = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+    private final AtomicReference<Exception> failure = new AtomicReference<>();
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1 || args.length > 2) {
+            System.err.println("Usage: CatalogImport <export.json.gz> [checkpoint file]");
+            System.exit(1);
+        }
+        Path export = Paths.get(args[0]);
+        Path checkpointFile = Paths.get(args.length > 1 ? args[1] : args[0] + ".checkpoint");
+
+        ScalarDBOperations scalarDBOperations = new ScalarDBOperations();
+        scalarDBOperations.initialize(false);
+        boolean completed;
+        try {
+            completed = new CatalogImport(scalarDBOperations, new Checkpoint(checkpointFile)).run(export);
+        } finally {
+            scalarDBOperations.close();
+        }
+        System.exit(completed ? 0 : 1);
+    }
+
+    CatalogImport(ScalarDBOperations scalarDBOperations, Checkpoint checkpoint) {
+        this.scalarDBOperations = scalarDBOperations;
+        this.checkpoint = checkpoint;
+    }
+
+    // Returns false when a chunk failed; the checkpoint then stops before that chunk
+    boolean run(Path export) throws Exception {
+        long resumeAfter = checkpoint.load();
+        if (resumeAfter > 0) {
+            System.out.println("Resuming after line " + resumeAfter);
+        }
+
+        long start = System.nanoTime();
+        long nextReport = start + REPORT_INTERVAL_NANOS;
+        long lineNumber = 0;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(Files.newInputStream(export), 1 << 16), StandardCharsets.UTF_8))) {
+            List<Movie> chunk = new ArrayList<>(CHUNK_SIZE);
+            long chunkAfter = resumeAfter;
+            String line;
+            while (failure.get() == null && (line = reader.readLine()) != null) {
+                lineNumber++;
+                if (lineNumber <= resumeAfter) {
+                    continue;
+                }
+
+                Movie movie = parseLine(line);
+                if (movie == null) {
+                    skipped.increment();
+                } else {
+                    chunk.add(movie);
+                }
+                if (chunk.size() >= CHUNK_SIZE) {
+                    submit(chunk, chunkAfter, lineNumber);
+                    chunk = new ArrayList<>(CHUNK_SIZE);
+                    chunkAfter = lineNumber;
+                }
+
+                long now = System.nanoTime();
+                if (now >= nextReport) {
+                    report(lineNumber, now - start);
+                    nextReport = now + REPORT_INTERVAL_NANOS;
+                }
+            }
+            if (failure.get() == null) {
+                submit(chunk, chunkAfter, lineNumber);
+            }
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(1, TimeUnit.HOURS);
+        }
+
+        report(lineNumber, System.nanoTime() - start);
+        Exception e = failure.get();
+        if (e != null) {
+            System.out.println("Import stopped: " + e.getMessage() + ". Run again to resume after line " + checkpoint.committedThrough());
+            return false;
+        }
+        System.out.println("Import complete");
+        return true;
+    }
+
+    // Writes the movies read from lines after+1..through; an empty chunk only moves the checkpoint
+    private void submit(List<Movie> chunk, long after, long through) throws InterruptedException {
+        chunksInFlight.acquire();
+        checkpoint.started(after);
+        executor.execute(() -> {
+            try {
+                if (!chunk.isEmpty()) {
+                    int count = scalarDBOperations.importMovies(chunk);
+                    written.add(count);
+                    skipped.add(chunk.size() - count);
+                }
+                checkpoint.finished(after, through);
+            } catch (Exception e) {
+                failure.compareAndSet(null, e);
+            } finally {
+                chunksInFlight.release();
+            }
+        });
+    }
+
+    private void report(long lineNumber, long elapsedNanos) {
+        double seconds = Math.max(elapsedNanos, 1) / 1e9;
+        System.out.printf("Read %d lines, wrote %d movies, skipped %d, %.0f rows/s%n",
+            lineNumber, written.sum(), skipped.sum(), written.sum() / seconds);
+    }
+
+    // Returns null for lines that should not be imported: adult titles, video releases (TMDB search
+    // leaves both out by default), and lines without an id or title. The daily export only carries
+    // original_title, which for films not in English is the title in its own language and script;
+    // title is used instead if the export has it, and either way the TMDB title replaces it once
+    // the movie's details are fetched.
+    static Movie parseLine(String line) {
+        JsonNode node;
+        try {
+            node = Json.MAPPER.readTree(line);
+        } catch (JsonProcessingException e) {
+            return null;
+        }
+        if (node == null || node.path("adult").asBoolean(false) || node.path("video").asBoolean(false)) {
+            return null;
+        }
+        int movieId = node.path("id").asInt(0);
+        String title = node.path("title").asText("").trim();
+        if (title.isEmpty()) {
+            title = node.path("original_title").asText("").trim();
+        }
+        if (movieId <= 0 || title.isEmpty()) {
+            return null;
+        }
+        return new Movie(movieId, title, null, null, null);
+    }
+
+    // Tracks which chunks have committed and saves the line up to which all of them have. Chunks
+    // are identified by the line just before their first one.
+    static class Checkpoint {
+        private final Path file;
+        private final TreeSet<Long> pending = new TreeSet<>();
+        private long finishedThrough;
+        private long saved = -1;
+
+        Checkpoint(Path file) {
+            this.file = file;
+        }
+
+        synchronized long load() throws IOException {
+            if (Files.exists(file)) {
+                String text = new String(Files.readAllBytes(file), StandardCharsets.UTF_8).trim();
+                finishedThrough = text.isEmpty() ? 0 : Long.parseLong(text);
+            }
+            saved = finishedThrough;
+            return finishedThrough;
+        }
+
+        synchronized void started(long after) {
+            pending.add(after);
+        }
+
+        synchronized void finished(long after, long through) {
+            pending.remove(after);
+            finishedThrough = Math.max(finishedThrough, through);
+            long committed = committedThrough();
+            if (committed > saved) {
+                save(committed);
+                saved = committed;
+            }
+        }
+
+        // Every chunk before the oldest unfinished one has committed
+        synchronized long committedThrough() {
+            return pending.isEmpty() ? finishedThrough : pending.first();
+        }
+
+        private void save(long line) {
+            try {
+                Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+                Files.write(temp, Long.toString(line).getBytes(StandardCharsets.UTF_8));
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not save checkpoint to " + file, e);
+            }
+        }
+    }
+
+    private static int envInt(String name, int defaultValue) {
+        String value = System.getenv(name);
+        return value == null || value.trim().isEmpty() ? defaultValue : Integer.parseInt(value.trim());
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.moviedb;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Periodically deletes change log entries older than the retention period. Clients that last
+// synced before that get a full snapshot of their lists instead of the changes since.
+public class ChangeLogCompactor {
+    private final ScalarDBOperations scalarDBOperations;
+    private final long retentionMillis;
+    private final int chunkSize;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "change-log-compactor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public ChangeLogCompactor(ScalarDBOperations scalarDBOperations, long retentionMillis, int chunkSize) {
+        this.scalarDBOperations = scalarDBOperations;
+        this.retentionMillis = retentionMillis;
+        this.chunkSize = chunkSize;
+    }
+
+    public static ChangeLogCompactor fromEnvironment(ScalarDBOperations scalarDBOperations) {
+        return new ChangeLogCompactor(
+            scalarDBOperations,
+            TimeUnit.HOURS.toMillis(envInt("CHANGE_LOG_RETENTION_HOURS", 168)),
+            envInt("CHANGE_LOG_COMPACT_CHUNK_SIZE", 500));
+    }
+
+    public void start() {
+        long intervalMinutes = envInt("CHANGE_LOG_COMPACT_MINUTES", 60);
+        scheduler.scheduleWithFixedDelay(this::compact, intervalMinutes, intervalMinutes, TimeUnit.MINUTES);
+    }
+
+    void compact() {
+        long start = System.nanoTime();
+        try {
+            int deleted = scalarDBOperations.compactChangeLog(System.currentTimeMillis() - retentionMillis, chunkSize);
+            if (deleted > 0) {
+                System.out.println("Compacted " + deleted + " change log entries in "
+                    + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+            }
+        } catch (Exception e) {
+            // Left for the next run
+            System.out.println("Change log compaction failed: " + e.getMessage());
+        }
+    }
+
+    public void close() {
+        scheduler.shutdownNow();
+    }
+
+    private static int envInt(String name, int defaultValue) {
+        String value = System.getenv(name);
+        return value == null || value.trim().isEmpty() ? defaultValue : Integer.parseInt(value.trim());
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.moviedb;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+
+import java.util.Collections;
+import java.util.List;
+
+// The response of /api/changes: either the changes after the client's cursor, or, when the client
+// has no cursor or one older than the change log, a page of a snapshot of the lists. seq is the
+// cursor to send next time; a snapshot page with more to come also has the cursor of the next page.
+@JsonPropertyOrder({"seq", "snapshot", "hasMore", "cursor", "changes", "watchlist", "watched", "friends"})
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public final class ChangeSet {
+    private final long seq;
+    private final boolean snapshot;
+    private final boolean hasMore;
+    private final String cursor;
+    private final List<ListChange> changes;
+    private final List<Movie> watchlist;
+    private final List<Movie> watched;
+    private final List<String> friends;
+
+    private ChangeSet(long seq, boolean snapshot, boolean hasMore, String cursor, List<ListChange> changes,
+                      List<Movie> watchlist, List<Movie> watched, List<String> friends) {
+        this.seq = seq;
+        this.snapshot = snapshot;
+        this.hasMore = hasMore;
+        this.cursor = cursor;
+        this.changes = changes;
+        this.watchlist = watchlist;
+        this.watched = watched;
+        this.friends = friends;
+    }
+
+    public static ChangeSet changes(long seq, List<ListChange> changes, boolean hasMore) {
+        return new ChangeSet(seq, false, hasMore, null, changes, null, null, null);
+    }
+
+    // cursor is null on the last page of the snapshot
+    public static ChangeSet snapshot(long seq, List<Movie> watchlist, List<Movie> watched, List<String> friends, String cursor) {
+        return new ChangeSet(seq, true, cursor != null, cursor, Collections.emptyList(), watchlist, watched, friends);
+    }
+
+    @JsonProperty("seq")
+    public long getSeq() {
+        return seq;
+    }
+
+    @JsonProperty("snapshot")
+    public boolean isSnapshot() {
+        return snapshot;
+    }
+
+    // More follows; ask again with seq as the cursor, or with cursor while paging a snapshot
+    @JsonProperty("hasMore")
+    public boolean hasMore() {
+        return hasMore;
+    }
+
+    @JsonProperty("cursor")
+    public String getCursor() {
+        return cursor;
+    }
+
+    @JsonProperty("changes")
+    public List<ListChange> getChanges() {
+        return changes;
+    }
+
+    @JsonProperty("watchlist")
+    public List<Movie> getWatchlist() {
+        return watchlist;
+    }
+
+    @JsonProperty("watched")
+    public List<Movie> getWatched() {
+        return watched;
+    }
+
+    @JsonProperty("friends")
+    public List<String> getFriends() {
+        return friends;
+    }
+}
@@ -0,0 +1,218 @@
+package com.example.moviedb;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+
+import java.io.UncheckedIOException;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+// Fans out per-user events to open server-sent event streams. Each connection has a bounded queue
+// drained by a small shared pool of writer threads, so idle connections hold no thread and a slow
+// client only backs up its own queue. A connection whose queue overflows is closed; the browser
+// reconnects and reloads what it shows. Heartbeat comments keep idle connections open through
+// proxies and idle timeouts, and find the ones whose client has gone.
+public class EventHub {
+
+    // Where a connection's events are written, e.g. a Javalin SseClient. send and heartbeat calls
+    // for one connection never overlap.
+    public interface Sink {
+        void send(String event, String data);
+
+        void heartbeat();
+
+        void close();
+    }
+
+    private static final String[] HEARTBEAT = new String[0];
+
+    private final int queueCapacity;
+    private final ConcurrentHashMap<String, Set<Connection>> connectionsByUser = new ConcurrentHashMap<>();
+    private final ExecutorService writers;
+    private final ScheduledExecutorService heartbeats;
+    private final LongAdder opened;
+    private final LongAdder closed;
+    private final LongAdder overflows;
+    private final LongAdder sent;
+
+    public EventHub(int queueCapacity, int writerThreads, long heartbeatMillis, Metrics metrics) {
+        this.queueCapacity = queueCapacity;
+        this.writers = Executors.newFixedThreadPool(writerThreads, daemon("event-writer"));
+        this.heartbeats = Executors.newSingleThreadScheduledExecutor(daemon("event-heartbeat"));
+        this.opened = metrics.counter("sse_connections_opened_total", "Event streams opened").labels();
+        this.closed = metrics.counter("sse_connections_closed_total", "Event streams closed").labels();
+        this.overflows = metrics.counter("sse_queue_overflows_total", "Event streams closed because their queue was full").labels();
+        this.sent = metrics.counter("sse_events_sent_total", "Events and heartbeats written to event streams").labels();
+        heartbeats.scheduleAtFixedRate(this::sendHeartbeats, heartbeatMillis, heartbeatMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public static EventHub fromEnvironment() {
+        return new EventHub(
+            envInt("EVENTS_QUEUE_SIZE", 64),
+            envInt("EVENTS_WRITER_THREADS", 4),
+            TimeUnit.SECONDS.toMillis(envInt("EVENTS_HEARTBEAT_SECONDS", 15)),
+            Metrics.REGISTRY);
+    }
+
+    public Connection subscribe(String userId, Sink sink) {
+        Connection connection = new Connection(userId, sink);
+        connectionsByUser.compute(userId, (key, connections) -> {
+            Set<Connection> set = connections != null ? connections : ConcurrentHashMap.newKeySet();
+            set.add(connection);
+            return set;
+        });
+        opened.increment();
+        return connection;
+    }
+
+    // Queues the event on every open connection of the user; payload is sent as JSON
+    public void publish(String userId, String event, Object payload) {
+        Set<Connection> connections = connectionsByUser.get(userId);
+        if (connections == null) {
+            return;
+        }
+        String data;
+        try {
+            data = Json.MAPPER.writeValueAsString(payload);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+        for (Connection connection : connections) {
+            if (!connection.offer(new String[] {event, data})) {
+                overflows.increment();
+                connection.close();
+            }
+        }
+    }
+
+    public int connectionCount() {
+        int count = 0;
+        for (Set<Connection> connections : connectionsByUser.values()) {
+            count += connections.size();
+        }
+        return count;
+    }
+
+    public void close() {
+        heartbeats.shutdownNow();
+        for (Set<Connection> connections : connectionsByUser.values()) {
+            for (Connection connection : connections) {
+                connection.close();
+            }
+        }
+        writers.shutdown();
+    }
+
+    private void sendHeartbeats() {
+        for (Set<Connection> connections : connectionsByUser.values()) {
+            for (Connection connection : connections) {
+                // A full queue already has writes pending, which do the same job
+                connection.offer(HEARTBEAT);
+            }
+        }
+    }
+
+    public final class Connection {
+        private final String userId;
+        private final Sink sink;
+        private final BlockingQueue<String[]> queue = new ArrayBlockingQueue<>(queueCapacity);
+        private final AtomicBoolean draining = new AtomicBoolean();
+        private final AtomicBoolean open = new AtomicBoolean(true);
+
+        private Connection(String userId, Sink sink) {
+            this.userId = userId;
+            this.sink = sink;
+        }
+
+        // Returns false when the queue is full
+        private boolean offer(String[] message) {
+            if (!open.get()) {
+                return true;
+            }
+            if (!queue.offer(message)) {
+                return false;
+            }
+            scheduleDrain();
+            return true;
+        }
+
+        private void scheduleDrain() {
+            if (draining.compareAndSet(false, true)) {
+                writers.execute(this::drain);
+            }
+        }
+
+        private void drain() {
+            try {
+                String[] message;
+                while (open.get() && (message = queue.poll()) != null) {
+                    if (message == HEARTBEAT) {
+                        sink.heartbeat();
+                    } else {
+                        sink.send(message[0], message[1]);
+                    }
+                    sent.increment();
+                }
+            } catch (RuntimeException e) {
+                System.out.println("Closing event stream of " + userId + ": " + e.getMessage());
+                close();
+            } finally {
+                draining.set(false);
+            }
+            // An offer may have come in after the last poll but before draining was cleared
+            if (open.get() && !queue.isEmpty()) {
+                scheduleDrain();
+            }
+        }
+
+        public void close() {
+            close(true);
+        }
+
+        // For the sink's own close callback: drops the connection without closing the sink again
+        public void closed() {
+            close(false);
+        }
+
+        private void close(boolean closeSink) {
+            if (!open.compareAndSet(true, false)) {
+                return;
+            }
+            connectionsByUser.computeIfPresent(userId, (key, connections) -> {
+                connections.remove(this);
+                return connections.isEmpty() ? null : connections;
+            });
+            queue.clear();
+            closed.increment();
+            if (!closeSink) {
+                return;
+            }
+            try {
+                sink.close();
+            } catch (RuntimeException e) {
+                System.out.println("Failed to close event stream of " + userId + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private static ThreadFactory daemon(String name) {
+        return runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static int envInt(String name, int defaultValue) {
+        String value = System.getenv(name);
+        return value == null || value.trim().isEmpty() ? defaultValue : Integer.parseInt(value.trim());
+    }
+}
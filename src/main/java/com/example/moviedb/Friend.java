@@ -0,0 +1,17 @@
+package com.example.moviedb;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+// A row of a user's friends list
+public final class Friend {
+    private final String friendId;
+
+    public Friend(String friendId) {
+        this.friendId = friendId;
+    }
+
+    @JsonProperty("friendId")
+    public String getFriendId() {
+        return friendId;
+    }
+}
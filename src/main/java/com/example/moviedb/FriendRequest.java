@@ -0,0 +1,33 @@
+package com.example.moviedb;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+
+// A row of friend_requests, or of its friend_requests_by_requestee mirror
+@JsonPropertyOrder({"requester_id", "requestee_id", "status"})
+public final class FriendRequest {
+    private final String requesterId;
+    private final String requesteeId;
+    private final String status;
+
+    public FriendRequest(String requesterId, String requesteeId, String status) {
+        this.requesterId = requesterId;
+        this.requesteeId = requesteeId;
+        this.status = status;
+    }
+
+    @JsonProperty("requester_id")
+    public String getRequesterId() {
+        return requesterId;
+    }
+
+    @JsonProperty("requestee_id")
+    public String getRequesteeId() {
+        return requesteeId;
+    }
+
+    @JsonProperty("status")
+    public String getStatus() {
+        return status;
+    }
+}
@@ -0,0 +1,29 @@
+package com.example.moviedb;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import io.javalin.http.Context;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+// The one Jackson configuration for the app. Responses are written with it straight to the
+// response stream, rather than built into a String or JsonNode first.
+public final class Json {
+    public static final ObjectMapper MAPPER = new ObjectMapper()
+        .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    private static final ObjectWriter WRITER = MAPPER.writer();
+
+    private Json() {
+    }
+
+    public static void respond(Context ctx, Object value) throws IOException {
+        ctx.contentType("application/json");
+        write(ctx.res.getOutputStream(), value);
+    }
+
+    static void write(OutputStream out, Object value) throws IOException {
+        WRITER.writeValue(out, value);
+    }
+}
@@ -0,0 +1,36 @@
+package com.example.moviedb;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+
+// The outcome of one movie of a batch list update
+@JsonPropertyOrder({"movieId", "status"})
+public final class ListBatchResult {
+    public static final String ADDED = "added";
+    public static final String REMOVED = "removed";
+    public static final String MOVED = "moved";
+    // The list already was as requested, e.g. the movie was already in it
+    public static final String UNCHANGED = "unchanged";
+    // TMDB has no movie with this id
+    public static final String NOT_FOUND = "not_found";
+    // The movie's transaction or TMDB call failed; the list was not changed for it
+    public static final String FAILED = "failed";
+
+    private final int movieId;
+    private final String status;
+
+    public ListBatchResult(int movieId, String status) {
+        this.movieId = movieId;
+        this.status = status;
+    }
+
+    @JsonProperty("movieId")
+    public int getMovieId() {
+        return movieId;
+    }
+
+    @JsonProperty("status")
+    public String getStatus() {
+        return status;
+    }
+}
@@ -0,0 +1,52 @@
+package com.example.moviedb;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+
+// An entry of a user's change log: item was added to or removed from list. item is a movieId for
+// the watchlist and watched lists and a userId for friends.
+@JsonPropertyOrder({"seq", "list", "op", "item", "movie"})
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public final class ListChange {
+    private final long seq;
+    private final String list;
+    private final String op;
+    private final String item;
+    private final Movie movie;
+
+    public ListChange(long seq, String list, String op, String item, Movie movie) {
+        this.seq = seq;
+        this.list = list;
+        this.op = op;
+        this.item = item;
+        this.movie = movie;
+    }
+
+    @JsonProperty("seq")
+    public long getSeq() {
+        return seq;
+    }
+
+    @JsonProperty("list")
+    public String getList() {
+        return list;
+    }
+
+    // "add" or "remove"
+    @JsonProperty("op")
+    public String getOp() {
+        return op;
+    }
+
+    @JsonProperty("item")
+    public String getItem() {
+        return item;
+    }
+
+    // The added movie's details, for movie additions
+    @JsonProperty("movie")
+    public Movie getMovie() {
+        return movie;
+    }
+}
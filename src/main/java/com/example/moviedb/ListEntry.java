@@ -0,0 +1,26 @@
+package com.example.moviedb;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+
+// A row of a user's watchlist or watched table
+@JsonPropertyOrder({"userId", "movieId"})
+public final class ListEntry {
+    private final String userId;
+    private final int movieId;
+
+    public ListEntry(String userId, int movieId) {
+        this.userId = userId;
+        this.movieId = movieId;
+    }
+
+    @JsonProperty("userId")
+    public String getUserId() {
+        return userId;
+    }
+
+    @JsonProperty("movieId")
+    public int getMovieId() {
+        return movieId;
+    }
+}
@@ -0,0 +1,172 @@
+package com.example.moviedb;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Counters and latency histograms, written out in the Prometheus text format for /metrics.
+// Recording only bumps LongAdders, so it is cheap enough to leave on; percentiles are computed by
+// Prometheus from the buckets (histogram_quantile) rather than here.
+public final class Metrics {
+    public static final Metrics REGISTRY = new Metrics();
+
+    // Upper bounds of the latency buckets, in seconds
+    private static final double[] LATENCY_BUCKETS = {
+        0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10
+    };
+
+    private final Map<String, Family<?>> families = new ConcurrentSkipListMap<>();
+
+    public Counter counter(String name, String help, String... labelNames) {
+        return (Counter) families.computeIfAbsent(name, key -> new Counter(name, help, labelNames));
+    }
+
+    public Histogram histogram(String name, String help, String... labelNames) {
+        return (Histogram) families.computeIfAbsent(name, key -> new Histogram(name, help, labelNames));
+    }
+
+    public String render() {
+        StringBuilder text = new StringBuilder(4096);
+        for (Family<?> family : families.values()) {
+            family.write(text);
+        }
+        return text.toString();
+    }
+
+    // A metric and its children, one per combination of label values
+    public abstract static class Family<C> {
+        private final String name;
+        private final String help;
+        private final String type;
+        private final String[] labelNames;
+        private final Map<String, C> children = new ConcurrentHashMap<>();
+        private final Map<String, String> labelTexts = new ConcurrentHashMap<>();
+
+        Family(String name, String help, String type, String[] labelNames) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+            this.labelNames = labelNames;
+        }
+
+        // Callers on hot paths should keep the child rather than look it up every time
+        public C labels(String... labelValues) {
+            if (labelValues.length != labelNames.length) {
+                throw new IllegalArgumentException(name + " expects labels " + String.join(", ", labelNames));
+            }
+            String key = String.join("\u0000", labelValues);
+            C child = children.get(key);
+            if (child == null) {
+                child = children.computeIfAbsent(key, k -> {
+                    labelTexts.put(k, labelText(labelValues));
+                    return newChild();
+                });
+            }
+            return child;
+        }
+
+        abstract C newChild();
+
+        abstract void writeChild(StringBuilder text, String name, String labels, C child);
+
+        private void write(StringBuilder text) {
+            text.append("# HELP ").append(name).append(' ').append(help).append('\n');
+            text.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+            children.forEach((key, child) -> writeChild(text, name, labelTexts.get(key), child));
+        }
+
+        private String labelText(String[] labelValues) {
+            StringBuilder text = new StringBuilder();
+            for (int i = 0; i < labelNames.length; i++) {
+                text.append(i == 0 ? "" : ",").append(labelNames[i]).append("=\"").append(escape(labelValues[i])).append('"');
+            }
+            return text.toString();
+        }
+    }
+
+    public static final class Counter extends Family<LongAdder> {
+        Counter(String name, String help, String[] labelNames) {
+            super(name, help, "counter", labelNames);
+        }
+
+        @Override
+        LongAdder newChild() {
+            return new LongAdder();
+        }
+
+        @Override
+        void writeChild(StringBuilder text, String name, String labels, LongAdder child) {
+            text.append(name).append(labels.isEmpty() ? "" : "{" + labels + "}").append(' ').append(child.sum()).append('\n');
+        }
+    }
+
+    public static final class Histogram extends Family<Histogram.Child> {
+        Histogram(String name, String help, String[] labelNames) {
+            super(name, help, "histogram", labelNames);
+        }
+
+        @Override
+        Child newChild() {
+            return new Child();
+        }
+
+        @Override
+        void writeChild(StringBuilder text, String name, String labels, Child child) {
+            String prefix = labels.isEmpty() ? "" : labels + ",";
+            long cumulative = 0;
+            for (int i = 0; i < LATENCY_BUCKETS.length; i++) {
+                cumulative += child.buckets[i].sum();
+                text.append(name).append("_bucket{").append(prefix).append("le=\"").append(LATENCY_BUCKETS[i]).append("\"} ")
+                    .append(cumulative).append('\n');
+            }
+            cumulative += child.buckets[LATENCY_BUCKETS.length].sum();
+            text.append(name).append("_bucket{").append(prefix).append("le=\"+Inf\"} ").append(cumulative).append('\n');
+            String braces = labels.isEmpty() ? "" : "{" + labels + "}";
+            text.append(name).append("_sum").append(braces).append(' ').append(child.sumNanos.sum() / 1e9).append('\n');
+            text.append(name).append("_count").append(braces).append(' ').append(cumulative).append('\n');
+        }
+
+        public static final class Child {
+            private static final long[] BUCKET_NANOS = new long[LATENCY_BUCKETS.length];
+
+            static {
+                for (int i = 0; i < LATENCY_BUCKETS.length; i++) {
+                    BUCKET_NANOS[i] = (long) (LATENCY_BUCKETS[i] * TimeUnit.SECONDS.toNanos(1));
+                }
+            }
+
+            // Counts per bucket, not cumulative; the last one is +Inf
+            private final LongAdder[] buckets = new LongAdder[LATENCY_BUCKETS.length + 1];
+            private final LongAdder sumNanos = new LongAdder();
+
+            Child() {
+                for (int i = 0; i < buckets.length; i++) {
+                    buckets[i] = new LongAdder();
+                }
+            }
+
+            public void observeNanos(long nanos) {
+                int bucket = 0;
+                while (bucket < BUCKET_NANOS.length && nanos > BUCKET_NANOS[bucket]) {
+                    bucket++;
+                }
+                buckets[bucket].increment();
+                sumNanos.add(nanos);
+            }
+
+            public long count() {
+                long count = 0;
+                for (LongAdder bucket : buckets) {
+                    count += bucket.sum();
+                }
+                return count;
+            }
+        }
+    }
+
+    private static String escape(String labelValue) {
+        return labelValue.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
@@ -0,0 +1,123 @@
+package com.example.moviedb;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Objects;
+
+// A row of the movies table. On the wire the id is a string and genre_ids a comma-separated
+// string, the format the movies table stores and the frontend reads.
+@JsonSerialize(using = Movie.Serializer.class)
+public final class Movie {
+    private static final int[] NO_GENRES = new int[0];
+
+    private final int id;
+    private final String title;
+    private final String releaseDate;
+    private final String posterPath;
+    private final int[] genreIds;
+
+    public Movie(int id, String title, String releaseDate, String posterPath, int[] genreIds) {
+        this.id = id;
+        this.title = title;
+        this.releaseDate = releaseDate;
+        this.posterPath = posterPath;
+        this.genreIds = genreIds == null || genreIds.length == 0 ? NO_GENRES : genreIds.clone();
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public String getReleaseDate() {
+        return releaseDate;
+    }
+
+    public String getPosterPath() {
+        return posterPath;
+    }
+
+    public int[] getGenreIds() {
+        return genreIds.clone();
+    }
+
+    public String getGenreIdsText() {
+        StringBuilder text = new StringBuilder(genreIds.length * 4);
+        for (int i = 0; i < genreIds.length; i++) {
+            if (i > 0) {
+                text.append(',');
+            }
+            text.append(genreIds[i]);
+        }
+        return text.toString();
+    }
+
+    static int[] parseGenreIds(String text) {
+        if (text == null || text.trim().isEmpty()) {
+            return NO_GENRES;
+        }
+        String[] parts = text.split(",");
+        int[] ids = new int[parts.length];
+        int count = 0;
+        for (String part : parts) {
+            String trimmed = part.trim();
+            if (!trimmed.isEmpty()) {
+                ids[count++] = Integer.parseInt(trimmed);
+            }
+        }
+        return count == ids.length ? ids : Arrays.copyOf(ids, count);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Movie)) {
+            return false;
+        }
+        Movie other = (Movie) o;
+        return id == other.id
+            && Objects.equals(title, other.title)
+            && Objects.equals(releaseDate, other.releaseDate)
+            && Objects.equals(posterPath, other.posterPath)
+            && Arrays.equals(genreIds, other.genreIds);
+    }
+
+    @Override
+    public int hashCode() {
+        return Integer.hashCode(id);
+    }
+
+    @Override
+    public String toString() {
+        return "Movie{id=" + id + ", title=" + title + "}";
+    }
+
+    static class Serializer extends StdSerializer<Movie> {
+        private static final long serialVersionUID = 1L;
+
+        Serializer() {
+            super(Movie.class);
+        }
+
+        @Override
+        public void serialize(Movie movie, JsonGenerator generator, SerializerProvider provider) throws IOException {
+            generator.writeStartObject();
+            generator.writeStringField("id", String.valueOf(movie.id));
+            generator.writeStringField("title", movie.title);
+            generator.writeStringField("release_date", movie.releaseDate);
+            generator.writeStringField("poster_path", movie.posterPath);
+            generator.writeStringField("genre_ids", movie.getGenreIdsText());
+            generator.writeEndObject();
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package com.example.moviedb;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntFunction;
+
+// Loads movie details in the background for movies the user has just seen in TMDB search results,
+// so adding one of them usually finds its details cached. Prefetches are speculative and never get
+// in the way of real requests: they start at most ratePerSecond times a second with at most
+// maxInFlight running, a movie is queued once, the oldest queued movie is dropped when the queue
+// is full, queued movies are given up after maxQueueMillis, and a movie the user asks for while
+// still queued is left to that request.
+public class MoviePrefetcher {
+    private final IntFunction<CompletableFuture<?>> loader;
+    private final int queueCapacity;
+    private final long maxQueueMillis;
+    private final Semaphore inFlightPermits;
+    // Movie id to the time it was queued, oldest first
+    private final LinkedHashMap<Integer, Long> queue = new LinkedHashMap<>();
+    private final Set<Integer> inFlight = ConcurrentHashMap.newKeySet();
+    // Movies prefetched lately, to tell which cached details a prefetch put there
+    private final LruCache<Integer, Boolean> prefetched;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "movie-prefetch");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final LongAdder queued;
+    private final LongAdder fetched;
+    private final LongAdder failed;
+    private final LongAdder dropped;
+    private final LongAdder expired;
+    private final LongAdder cancelled;
+    private final LongAdder hits;
+    private final LongAdder misses;
+
+    public MoviePrefetcher(IntFunction<CompletableFuture<?>> loader, int queueCapacity, int maxInFlight,
+                           int ratePerSecond, long maxQueueMillis, Metrics metrics) {
+        this.loader = loader;
+        this.queueCapacity = queueCapacity;
+        this.maxQueueMillis = maxQueueMillis;
+        this.inFlightPermits = new Semaphore(maxInFlight);
+        this.prefetched = new LruCache<>(Math.max(queueCapacity * 16, 1_000));
+
+        Metrics.Counter prefetches = metrics.counter("tmdb_prefetches_total", "Speculative movie detail prefetches by outcome", "outcome");
+        this.queued = prefetches.labels("queued");
+        this.fetched = prefetches.labels("fetched");
+        this.failed = prefetches.labels("failed");
+        this.dropped = prefetches.labels("dropped");
+        this.expired = prefetches.labels("expired");
+        this.cancelled = prefetches.labels("cancelled");
+        Metrics.Counter lookups = metrics.counter("tmdb_prefetch_lookups_total",
+            "Movie detail lookups for adds, by whether a prefetch had already cached them", "result");
+        this.hits = lookups.labels("hit");
+        this.misses = lookups.labels("miss");
+
+        long periodMicros = TimeUnit.SECONDS.toMicros(1) / Math.max(ratePerSecond, 1);
+        scheduler.scheduleAtFixedRate(this::startNext, periodMicros, periodMicros, TimeUnit.MICROSECONDS);
+    }
+
+    public static MoviePrefetcher fromEnvironment(IntFunction<CompletableFuture<?>> loader) {
+        return new MoviePrefetcher(
+            loader,
+            envInt("PREFETCH_QUEUE_SIZE", 100),
+            envInt("PREFETCH_MAX_IN_FLIGHT", 2),
+            envInt("PREFETCH_RATE_PER_SECOND", 4),
+            TimeUnit.SECONDS.toMillis(envInt("PREFETCH_MAX_QUEUE_SECONDS", 30)),
+            Metrics.REGISTRY);
+    }
+
+    // Queues the movies in order, skipping those already queued or loading
+    public void offer(List<Integer> movieIds) {
+        long now = System.currentTimeMillis();
+        synchronized (queue) {
+            for (int movieId : movieIds) {
+                if (queue.containsKey(movieId) || inFlight.contains(movieId)) {
+                    continue;
+                }
+                if (queue.size() >= queueCapacity) {
+                    Iterator<Integer> oldest = queue.keySet().iterator();
+                    oldest.next();
+                    oldest.remove();
+                    dropped.increment();
+                }
+                queue.put(movieId, now);
+                queued.increment();
+            }
+        }
+    }
+
+    // Called when an add needs the movie's details; cached tells whether they were already cached.
+    // A movie still queued is taken off the queue, since the add loads it now anyway.
+    public void demanded(int movieId, boolean cached) {
+        synchronized (queue) {
+            if (queue.remove(movieId) != null) {
+                cancelled.increment();
+            }
+        }
+        if (cached && prefetched.containsKey(movieId)) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+    }
+
+    private void startNext() {
+        if (!inFlightPermits.tryAcquire()) {
+            return;
+        }
+        Integer movieId = null;
+        long expiredBefore = System.currentTimeMillis() - maxQueueMillis;
+        synchronized (queue) {
+            Iterator<Map.Entry<Integer, Long>> iterator = queue.entrySet().iterator();
+            while (iterator.hasNext() && movieId == null) {
+                Map.Entry<Integer, Long> entry = iterator.next();
+                iterator.remove();
+                if (entry.getValue() < expiredBefore) {
+                    expired.increment();
+                } else {
+                    movieId = entry.getKey();
+                    inFlight.add(movieId);
+                }
+            }
+        }
+        if (movieId == null) {
+            inFlightPermits.release();
+            return;
+        }
+
+        int id = movieId;
+        CompletableFuture<?> loading;
+        try {
+            loading = loader.apply(id);
+        } catch (RuntimeException e) {
+            loading = CompletableFuture.failedFuture(e);
+        }
+        loading.whenComplete((value, error) -> {
+            if (error == null) {
+                prefetched.put(id, Boolean.TRUE);
+                fetched.increment();
+            } else {
+                failed.increment();
+            }
+            inFlight.remove(id);
+            inFlightPermits.release();
+        });
+    }
+
+    public Map<String, Long> stats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        synchronized (queue) {
+            stats.put("queueSize", (long) queue.size());
+        }
+        stats.put("inFlight", (long) inFlight.size());
+        stats.put("queued", queued.sum());
+        stats.put("fetched", fetched.sum());
+        stats.put("failed", failed.sum());
+        stats.put("dropped", dropped.sum());
+        stats.put("expired", expired.sum());
+        stats.put("cancelled", cancelled.sum());
+        long hitCount = hits.sum();
+        long lookups = hitCount + misses.sum();
+        stats.put("hits", hitCount);
+        stats.put("misses", lookups - hitCount);
+        stats.put("hitRatioPercent", lookups == 0 ? 0 : hitCount * 100 / lookups);
+        return stats;
+    }
+
+    // Drops the queued movies; prefetches already running finish on their own
+    public void close() {
+        scheduler.shutdownNow();
+        synchronized (queue) {
+            cancelled.add(queue.size());
+            queue.clear();
+        }
+    }
+
+    private static int envInt(String name, int defaultValue) {
+        String value = System.getenv(name);
+        return value == null || value.trim().isEmpty() ? defaultValue : Integer.parseInt(value.trim());
+    }
+}
@@ -1,90 +1,188 @@
 package com.example.moviedb;
 
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.scalar.db.exception.transaction.TransactionException;
 
-import org.apache.http.client.fluent.Request;
-
-import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
-
-import com.fasterxml.jackson.core.type.TypeReference;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongPredicate;
 
 public class MovieService {
-    private static final String TMDB_API_KEY = "your_api_key";
-    private static final String TMDB_BASE_URL = "https://api.themoviedb.org/3";
+    private static final int BATCH_CHUNK_SIZE = 25;
+    private static final Set<String> LIST_BATCH_OPERATIONS = new HashSet<>(Arrays.asList("add", "remove", "move"));
+    private static final int PREFETCH_TOP_RESULTS = envInt("PREFETCH_TOP_RESULTS", 5);
 
     private ScalarDBOperations scalarDBOperations;
+    private final TmdbClient tmdbClient = TmdbClient.fromEnvironment();
+
+    // TMDB search results change slowly and movie details almost never, so both are cached
+    private final RefreshingCache<JsonNode> tmdbSearchCache = new RefreshingCache<>(
+        envInt("TMDB_SEARCH_CACHE_SIZE", 5_000),
+        TimeUnit.SECONDS.toMillis(envInt("TMDB_SEARCH_CACHE_TTL_SECONDS", 600)),
+        TimeUnit.SECONDS.toMillis(envInt("TMDB_SEARCH_CACHE_STALE_SECONDS", 3_600)));
+    private final RefreshingCache<JsonNode> tmdbDetailsCache = new RefreshingCache<>(
+        envInt("TMDB_DETAILS_CACHE_SIZE", 10_000),
+        TimeUnit.SECONDS.toMillis(envInt("TMDB_DETAILS_CACHE_TTL_SECONDS", 86_400)),
+        TimeUnit.SECONDS.toMillis(envInt("TMDB_DETAILS_CACHE_STALE_SECONDS", 604_800)));
+
+    // Warms tmdbDetailsCache with the top search results, as adds usually follow a search
+    private final MoviePrefetcher prefetcher = MoviePrefetcher.fromEnvironment(this::fetchMovieDetails);
+
+    public MovieService(ScalarDBOperations scalarDBOperations) {
+        this.scalarDBOperations = scalarDBOperations;
+    }
 
-    public MovieService() {
-        this.scalarDBOperations = new ScalarDBOperations();
-        try {
-            scalarDBOperations.initialize();
-        } catch (Exception e) {
-            throw new RuntimeException("Failed to initialize ScalarDB", e);
-        }
+    public void close() {
+        prefetcher.close();
+        tmdbClient.close();
     }
 
-    public JsonNode fetchMovieDetails(int movieId) throws IOException {
-        String url = TMDB_BASE_URL + "/movie/" + movieId + "?api_key=" + TMDB_API_KEY + "&append_to_response=credits";
-        String response = Request.Get(url).execute().returnContent().asString();
-        ObjectMapper mapper = new ObjectMapper();
-        JsonNode movieDetails = mapper.readTree(response);
+    public CompletableFuture<JsonNode> fetchMovieDetails(int movieId) {
+        return tmdbDetailsCache.get(detailsKey(movieId), () -> tmdbClient.fetchMovieDetails(movieId));
+    }
+
+    private static String detailsKey(int movieId) {
+        return "movie:" + movieId;
+    }
+
+    // Resolves to the first 20 TMDB search results
+    public CompletableFuture<JsonNode> searchTMDBMovies(String query) {
+        CompletableFuture<JsonNode> results = tmdbSearchCache.get("search:" + query, () -> tmdbClient.searchMovies(query));
+        results.thenAccept(this::prefetchTopResults);
+        return results;
+    }
 
-        // Extract genre IDs
-        if (movieDetails.has("genres") && movieDetails.get("genres").isArray()) {
-            List<Integer> genreIds = new ArrayList<>();
-            for (JsonNode genre : movieDetails.get("genres")) {
-                genreIds.add(genre.get("id").asInt());
+    // Queues details of the first results that neither the movies table nor the cache has yet;
+    // movies a catalog import added without details are queued too
+    private void prefetchTopResults(JsonNode results) {
+        if (results == null || !results.isArray()) {
+            return;
+        }
+        List<Integer> movieIds = new ArrayList<>(PREFETCH_TOP_RESULTS);
+        for (int i = 0; i < results.size() && i < PREFETCH_TOP_RESULTS; i++) {
+            int movieId = results.get(i).path("id").asInt(0);
+            if (movieId > 0 && !scalarDBOperations.hasMovieDetails(movieId) && !tmdbDetailsCache.contains(detailsKey(movieId))) {
+                movieIds.add(movieId);
             }
-            ((ObjectNode) movieDetails).put("genre_ids", mapper.writeValueAsString(genreIds));
         }
+        prefetcher.offer(movieIds);
+    }
 
-        return movieDetails;
+    public Page<Movie> searchLocalMovies(String query, int limit, int offset) throws TransactionException {
+        return scalarDBOperations.searchMovies(query, limit, offset);
     }
 
+    public void addMovie(String userId, int movieId, String listName) throws Exception {
+        // Common case: the movie is already in the movies table and one transaction is enough
+        if (scalarDBOperations.addMovieToCatalogAndList(userId, movieId, listName, null)) {
+            return;
+        }
 
-    public JsonNode searchTMDBMovies(String query) throws IOException {
-        String url = TMDB_BASE_URL + "/search/movie?api_key=" + TMDB_API_KEY + "&query=" + query;
-        String response = Request.Get(url).execute().returnContent().asString();
-        ObjectMapper mapper = new ObjectMapper();
-        return mapper.readTree(response);
+        // Otherwise fetch the details from TMDB outside of any transaction and try again with them
+        prefetcher.demanded(movieId, tmdbDetailsCache.contains(detailsKey(movieId)));
+        Movie movie;
+        try {
+            movie = toMovie(fetchMovieDetails(movieId).join());
+        } catch (CompletionException e) {
+            // A movie imported without details can still go on the list as it is
+            if (!scalarDBOperations.isMovieInTitleIndex(movieId)) {
+                throw e;
+            }
+            System.out.println("Adding movie " + movieId + " without details: " + e.getMessage());
+            scalarDBOperations.addMovieToList(userId, movieId, listName);
+            return;
+        }
+        scalarDBOperations.addMovieToCatalogAndList(userId, movieId, listName, movie);
     }
 
-    public JsonNode searchLocalMovies(String query) throws TransactionException {
-        List<Map<String, String>> movies = scalarDBOperations.searchMovies(query);
-        ObjectMapper mapper = new ObjectMapper();
-        return mapper.valueToTree(movies);
+    // Applies operation ("add" or "remove" on listName, or "move" from the watchlist to watched) to
+    // every movie, BATCH_CHUNK_SIZE movies per transaction, and returns each movie's outcome in
+    // order. A failed chunk marks its movies as failed and the remaining chunks still run. Details
+    // of added movies missing from the movies table, or imported there without details, are fetched
+    // from TMDB in parallel first, so no transaction waits on TMDB.
+    public List<ListBatchResult> applyListBatch(String userId, String operation, String listName, List<Integer> movieIds) throws TransactionException {
+        if (!LIST_BATCH_OPERATIONS.contains(operation)) {
+            throw new IllegalArgumentException("Unknown list operation: " + operation);
+        }
+        List<Integer> distinctIds = new ArrayList<>(new LinkedHashSet<>(movieIds));
+
+        Map<Integer, Movie> catalogMovies = new HashMap<>();
+        Map<Integer, String> fetchFailures = new HashMap<>();
+        if (operation.equals("add")) {
+            Map<Integer, CompletableFuture<JsonNode>> details = new LinkedHashMap<>();
+            for (int movieId : scalarDBOperations.findMoviesWithoutDetails(distinctIds)) {
+                prefetcher.demanded(movieId, tmdbDetailsCache.contains(detailsKey(movieId)));
+                details.put(movieId, fetchMovieDetails(movieId));
+            }
+            for (Map.Entry<Integer, CompletableFuture<JsonNode>> entry : details.entrySet()) {
+                try {
+                    catalogMovies.put(entry.getKey(), toMovie(entry.getValue().join()));
+                } catch (CompletionException e) {
+                    // Movies imported without details are added with their sparse row instead
+                    if (!scalarDBOperations.isMovieInTitleIndex(entry.getKey())) {
+                        fetchFailures.put(entry.getKey(), isNotFound(e) ? ListBatchResult.NOT_FOUND : ListBatchResult.FAILED);
+                    }
+                }
+            }
+        }
+
+        List<Integer> writes = new ArrayList<>(distinctIds);
+        writes.removeAll(fetchFailures.keySet());
+        Map<Integer, ListBatchResult> outcomes = new HashMap<>();
+        for (int from = 0; from < writes.size(); from += BATCH_CHUNK_SIZE) {
+            List<Integer> chunk = writes.subList(from, Math.min(from + BATCH_CHUNK_SIZE, writes.size()));
+            try {
+                for (ListBatchResult result : scalarDBOperations.applyListBatch(userId, operation, listName, chunk, catalogMovies)) {
+                    outcomes.put(result.getMovieId(), result);
+                }
+            } catch (TransactionException e) {
+                System.out.println("List batch chunk failed: " + e.getMessage());
+                for (int movieId : chunk) {
+                    outcomes.put(movieId, new ListBatchResult(movieId, ListBatchResult.FAILED));
+                }
+            }
+        }
+
+        List<ListBatchResult> results = new ArrayList<>(distinctIds.size());
+        for (int movieId : distinctIds) {
+            String fetchFailure = fetchFailures.get(movieId);
+            results.add(fetchFailure != null ? new ListBatchResult(movieId, fetchFailure) : outcomes.get(movieId));
+        }
+        return results;
     }
 
-    public void addMovie(String userId, int movieId, String listName) throws Exception {
-        // Check if the movie is already in the movies table
-        if (!scalarDBOperations.isMovieInMoviesTable(movieId)) {
-            JsonNode movieDetails = fetchMovieDetails(movieId);
-
-            ObjectMapper mapper = new ObjectMapper();
-            List<Integer> genreIds = mapper.readValue(movieDetails.get("genre_ids").asText(), new TypeReference<List<Integer>>() {});
-
-            Map<String, String> movieDetailsMap = new HashMap<>();
-            movieDetailsMap.put("id", String.valueOf(movieDetails.get("id").asInt()));
-            movieDetailsMap.put("title", movieDetails.get("title").asText());
-            movieDetailsMap.put("release_date", movieDetails.get("release_date").asText());
-            movieDetailsMap.put("poster_path", movieDetails.get("poster_path").asText());
-            movieDetailsMap.put("genre_ids", String.join(",", genreIds.stream().map(String::valueOf).collect(Collectors.toList())));
-            
-            scalarDBOperations.addMovieToMoviesTable(movieDetailsMap);
+    private static boolean isNotFound(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof TmdbClient.TmdbException) {
+                return ((TmdbClient.TmdbException) cause).getStatusCode() == 404;
+            }
         }
+        return false;
+    }
 
-        // Check if the movie is already in the user's list
-        if (!scalarDBOperations.isMovieInList(userId, movieId, listName)) {
-            scalarDBOperations.addMovieToList(userId, movieId, listName);
+    // Builds a Movie from the fields TmdbClient.fetchMovieDetails keeps
+    static Movie toMovie(JsonNode details) {
+        JsonNode genres = details.path("genre_ids");
+        int[] genreIds = new int[genres.size()];
+        for (int i = 0; i < genreIds.length; i++) {
+            genreIds[i] = genres.get(i).asInt();
         }
+        return new Movie(
+            details.get("id").asInt(),
+            details.path("title").asText(null),
+            details.path("release_date").asText(null),
+            details.path("poster_path").asText(null),
+            genreIds);
     }
         
     
@@ -104,10 +202,30 @@ public class MovieService {
         scalarDBOperations.removeMovieFromList(userId, movieId, listName);
     }
 
-    public JsonNode listMoviesInUserList(String userId, String listName) throws TransactionException {
-        List<Map<String, String>> movies = scalarDBOperations.listMoviesInUserList(userId, listName);
-        ObjectMapper mapper = new ObjectMapper();
-        return mapper.valueToTree(movies);
+    public ChangeSet getChanges(String userId, long since, int limit, String snapshotCursor) throws TransactionException {
+        return scalarDBOperations.getChanges(userId, since, limit, snapshotCursor);
+    }
+
+    public Page<Movie> listMoviesInUserList(String userId, String listName, int limit, Integer cursor, LongPredicate unchanged) throws TransactionException {
+        return scalarDBOperations.listMoviesInUserList(userId, listName, limit, cursor, unchanged);
+    }
+
+    public Map<String, Map<String, Long>> getCacheStats() {
+        Map<String, Map<String, Long>> stats = new LinkedHashMap<>();
+        stats.put("movies", scalarDBOperations.getMovieCacheStats());
+        stats.put("tmdbSearch", tmdbSearchCache.stats());
+        stats.put("tmdbDetails", tmdbDetailsCache.stats());
+        stats.put("tmdbPrefetch", prefetcher.stats());
+        return stats;
+    }
+
+    public Map<String, Map<String, Long>> getTransactionStats() {
+        return scalarDBOperations.getTransactionStats();
+    }
+
+    private static int envInt(String name, int defaultValue) {
+        String value = System.getenv(name);
+        return value == null || value.trim().isEmpty() ? defaultValue : Integer.parseInt(value.trim());
     }
 
 
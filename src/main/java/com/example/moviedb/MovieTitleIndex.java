@@ -0,0 +1,159 @@
+package com.example.moviedb;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// In-memory inverted index from normalized title tokens to movieIds, used for local movie search
+public class MovieTitleIndex {
+    private static final int EXACT_TOKEN_SCORE = 2;
+    private static final int PREFIX_TOKEN_SCORE = 1;
+    // Shorter last tokens only match exactly; a single letter would expand to most of the catalog
+    private static final int MIN_PREFIX_LENGTH = 2;
+    private static final int DEFAULT_MAX_PREFIX_MATCHES = 10_000;
+
+    private final NavigableMap<String, Set<Integer>> postings = new TreeMap<>();
+    private final Map<Integer, String> titles = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final int maxPrefixMatches;
+
+    public MovieTitleIndex() {
+        this(DEFAULT_MAX_PREFIX_MATCHES);
+    }
+
+    // Prefix expansion stops once it has collected maxPrefixMatches movies, taking tokens in
+    // alphabetical order, so every keystroke costs at most about that much
+    MovieTitleIndex(int maxPrefixMatches) {
+        this.maxPrefixMatches = maxPrefixMatches;
+    }
+
+    public void add(int movieId, String title) {
+        if (title == null) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            String previous = titles.put(movieId, normalize(title));
+            if (previous != null) {
+                for (String token : tokenize(previous)) {
+                    Set<Integer> ids = postings.get(token);
+                    if (ids != null && ids.remove(movieId) && ids.isEmpty()) {
+                        postings.remove(token);
+                    }
+                }
+            }
+            for (String token : tokenize(title)) {
+                postings.computeIfAbsent(token, t -> new HashSet<>()).add(movieId);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public boolean contains(int movieId) {
+        lock.readLock().lock();
+        try {
+            return titles.containsKey(movieId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return titles.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Ranks movies by how many query tokens their title contains. The last query token also
+    // matches as a prefix, so results show up while the user is still typing it.
+    public List<Integer> search(String query, int offset, int limit) {
+        List<String> queryTokens = new ArrayList<>(new LinkedHashSet<>(tokenize(query)));
+        if (queryTokens.isEmpty() || limit <= 0) {
+            return Collections.emptyList();
+        }
+        String phrase = normalize(query).trim();
+
+        lock.readLock().lock();
+        try {
+            Map<Integer, Integer> scores = new HashMap<>();
+            for (int i = 0; i < queryTokens.size(); i++) {
+                String token = queryTokens.get(i);
+                Set<Integer> exact = postings.getOrDefault(token, Collections.emptySet());
+                for (int movieId : exact) {
+                    scores.merge(movieId, EXACT_TOKEN_SCORE, Integer::sum);
+                }
+                if (i == queryTokens.size() - 1 && token.length() >= MIN_PREFIX_LENGTH) {
+                    Set<Integer> prefixed = new HashSet<>();
+                    for (Set<Integer> ids : postings.subMap(token, false, token + Character.MAX_VALUE, false).values()) {
+                        if (prefixed.size() >= maxPrefixMatches) {
+                            break;
+                        }
+                        prefixed.addAll(ids);
+                    }
+                    prefixed.removeAll(exact);
+                    for (int movieId : prefixed) {
+                        scores.merge(movieId, PREFIX_TOKEN_SCORE, Integer::sum);
+                    }
+                }
+            }
+
+            Comparator<Map.Entry<Integer, Integer>> ranking = Comparator
+                .comparing((Map.Entry<Integer, Integer> entry) -> entry.getValue())
+                .thenComparing(entry -> titles.get(entry.getKey()).contains(phrase))
+                .thenComparing(entry -> -titles.get(entry.getKey()).length())
+                .thenComparing(entry -> -entry.getKey());
+
+            // Keep only the best offset + limit entries, worst one at the head
+            int keep = offset + limit;
+            PriorityQueue<Map.Entry<Integer, Integer>> top = new PriorityQueue<>(keep + 1, ranking);
+            for (Map.Entry<Integer, Integer> entry : scores.entrySet()) {
+                top.add(entry);
+                if (top.size() > keep) {
+                    top.poll();
+                }
+            }
+
+            List<Integer> ranked = new ArrayList<>(top.size());
+            while (!top.isEmpty()) {
+                ranked.add(top.poll().getKey());
+            }
+            Collections.reverse(ranked);
+            return offset >= ranked.size() ? Collections.emptyList() : ranked.subList(offset, ranked.size());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        for (String token : normalize(text).split("[^\\p{L}\\p{N}]+")) {
+            if (!token.isEmpty()) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+
+    // Lowercases and strips accents, so accented and plain spellings index to the same token
+    private static String normalize(String text) {
+        return Normalizer.normalize(text, Normalizer.Form.NFD)
+            .replaceAll("\\p{M}", "")
+            .toLowerCase();
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.moviedb;
+
+import java.util.List;
+
+// One page of a listing; nextCursor is null once the last page has been returned. Pages of the
+// versioned lists also carry the list's version stamp, read in the same transaction as the items,
+// and are unchanged, without items, when the caller already had that version. A page whose items
+// can change without a new version is left unversioned.
+public class Page<T> {
+    private final List<T> items;
+    private final String nextCursor;
+    private final long version;
+    private final boolean unchanged;
+    private final boolean versioned;
+
+    public Page(List<T> items, String nextCursor) {
+        this(items, nextCursor, 0, false, false);
+    }
+
+    private Page(List<T> items, String nextCursor, long version, boolean unchanged, boolean versioned) {
+        this.items = items;
+        this.nextCursor = nextCursor;
+        this.version = version;
+        this.unchanged = unchanged;
+        this.versioned = versioned;
+    }
+
+    public static <T> Page<T> unchanged(long version) {
+        return new Page<>(null, null, version, true, true);
+    }
+
+    public Page<T> withVersion(long version) {
+        return new Page<>(items, nextCursor, version, false, true);
+    }
+
+    public Page<T> withoutVersion() {
+        return new Page<>(items, nextCursor, 0, false, false);
+    }
+
+    public List<T> getItems() {
+        return items;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public boolean isUnchanged() {
+        return unchanged;
+    }
+
+    public boolean isVersioned() {
+        return versioned;
+    }
+}
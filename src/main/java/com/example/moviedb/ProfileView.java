@@ -0,0 +1,51 @@
+package com.example.moviedb;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+
+import java.util.List;
+
+// The profile page in one response. Friends and friend requests hold their first page; the
+// cursors continue them through /api/listFriends and /api/listFriendRequests.
+@JsonPropertyOrder({"userId", "email", "friends", "nextFriendsCursor", "friendRequests", "nextFriendRequestsCursor"})
+public final class ProfileView {
+    private final UserProfile profile;
+    private final Page<Friend> friends;
+    private final Page<FriendRequest> friendRequests;
+
+    public ProfileView(UserProfile profile, Page<Friend> friends, Page<FriendRequest> friendRequests) {
+        this.profile = profile;
+        this.friends = friends;
+        this.friendRequests = friendRequests;
+    }
+
+    @JsonProperty("userId")
+    public String getUserId() {
+        return profile.getUserId();
+    }
+
+    @JsonProperty("email")
+    public String getEmail() {
+        return profile.getEmail();
+    }
+
+    @JsonProperty("friends")
+    public List<Friend> getFriends() {
+        return friends.getItems();
+    }
+
+    @JsonProperty("nextFriendsCursor")
+    public String getNextFriendsCursor() {
+        return friends.getNextCursor();
+    }
+
+    @JsonProperty("friendRequests")
+    public List<FriendRequest> getFriendRequests() {
+        return friendRequests.getItems();
+    }
+
+    @JsonProperty("nextFriendRequestsCursor")
+    public String getNextFriendRequestsCursor() {
+        return friendRequests.getNextCursor();
+    }
+}
@@ -0,0 +1,110 @@
+package com.example.moviedb;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+// Size-bounded TTL cache for slow upstream responses. Concurrent loads of the same key share one
+// upstream call, and entries past their TTL are still served for a while as the key is refreshed
+// in the background.
+public class RefreshingCache<V> {
+
+    private static class Entry<V> {
+        final V value;
+        final long loadedAt;
+
+        Entry(V value, long loadedAt) {
+            this.value = value;
+            this.loadedAt = loadedAt;
+        }
+    }
+
+    private final LruCache<String, Entry<V>> entries;
+    private final ConcurrentHashMap<String, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final long ttlMillis;
+    private final long staleMillis;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder staleHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder refreshFailures = new LongAdder();
+
+    public RefreshingCache(int maxSize, long ttlMillis, long staleMillis) {
+        this.entries = new LruCache<>(maxSize);
+        this.ttlMillis = ttlMillis;
+        this.staleMillis = staleMillis;
+    }
+
+    public CompletableFuture<V> get(String key, Supplier<CompletableFuture<V>> loader) {
+        Entry<V> entry = entries.get(key);
+        if (entry != null) {
+            long age = System.currentTimeMillis() - entry.loadedAt;
+            if (age < ttlMillis) {
+                hits.increment();
+                return CompletableFuture.completedFuture(entry.value);
+            }
+            if (age < ttlMillis + staleMillis) {
+                staleHits.increment();
+                if (!inFlight.containsKey(key)) {
+                    load(key, loader).exceptionally(e -> {
+                        refreshFailures.increment();
+                        return null;
+                    });
+                }
+                return CompletableFuture.completedFuture(entry.value);
+            }
+        }
+        misses.increment();
+        return load(key, loader);
+    }
+
+    // True when get would answer from the cache, fresh or stale, without waiting on the loader.
+    // Does not count as a hit or miss, nor make the entry recently used.
+    public boolean contains(String key) {
+        Entry<V> entry = entries.peek(key);
+        return entry != null && System.currentTimeMillis() - entry.loadedAt < ttlMillis + staleMillis;
+    }
+
+    // Starts the loader unless a load for the key is already running, in which case the caller
+    // shares that load's result
+    private CompletableFuture<V> load(String key, Supplier<CompletableFuture<V>> loader) {
+        CompletableFuture<V> created = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, created);
+        if (existing != null) {
+            coalesced.increment();
+            return existing;
+        }
+
+        CompletableFuture<V> loading;
+        try {
+            loading = loader.get();
+        } catch (RuntimeException e) {
+            loading = CompletableFuture.failedFuture(e);
+        }
+        loading.whenComplete((value, error) -> {
+            if (error == null) {
+                entries.put(key, new Entry<>(value, System.currentTimeMillis()));
+            }
+            inFlight.remove(key, created);
+            if (error == null) {
+                created.complete(value);
+            } else {
+                created.completeExceptionally(error);
+            }
+        });
+        return created;
+    }
+
+    public Map<String, Long> stats() {
+        Map<String, Long> stats = entries.stats();
+        stats.put("hits", hits.sum());
+        stats.put("staleHits", staleHits.sum());
+        stats.put("misses", misses.sum());
+        stats.put("coalesced", coalesced.sum());
+        stats.put("refreshFailures", refreshFailures.sum());
+        return stats;
+    }
+}
@@ -2,40 +2,87 @@ package com.example.moviedb;
 
 import com.scalar.db.api.DistributedTransaction;
 import com.scalar.db.api.DistributedTransactionManager;
+import com.scalar.db.api.DistributedStorage;
 import com.scalar.db.api.Get;
+import com.scalar.db.api.Operation;
 import com.scalar.db.api.Scan;
 import com.scalar.db.api.Put;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.scalar.db.api.Delete;
 import com.scalar.db.api.Result;
+import com.scalar.db.api.Scanner;
 import com.scalar.db.exception.transaction.TransactionException;
 import com.scalar.db.io.Key;
+import com.scalar.db.service.StorageFactory;
 import com.scalar.db.service.TransactionFactory;
 
-import java.io.File;
 import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Properties;
-import java.util.stream.Collectors;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongPredicate;
 
 public class ScalarDBOperations {
 
+    private static final int MOVIE_CACHE_SIZE = 10_000;
+    private static final int USER_SEARCH_PREFIX_LENGTH = 8;
+    private static final int USER_SEARCH_MAX_SCANNED = 1_000;
+    private static final int TITLE_INDEX_PAGE_SIZE = 10_000;
+    private static final String SENT_REQUESTS_CURSOR = "sent:";
+    private static final String RECEIVED_REQUESTS_CURSOR = "received:";
+    static final String FRIENDS_LIST = "friends";
+    static final String FRIEND_REQUESTS_LIST = "friend_requests";
+    private static final int TRANSACTION_MAX_ATTEMPTS = 3;
+    private static final long TRANSACTION_BASE_BACKOFF_MILLIS = 10;
+    private static final long TRANSACTION_MAX_BACKOFF_MILLIS = 500;
+
     private DistributedTransactionManager manager;
+    private TransactionExecutor transactionExecutor;
+    // Only set when the storage fast path is enabled
+    private DistributedStorage storage;
+    // Whole-table scans, see scanTable
+    private DistributedStorage scanStorage;
+    private final LruCache<Integer, Movie> movieCache = new LruCache<>(MOVIE_CACHE_SIZE);
+    private final MovieTitleIndex titleIndex = new MovieTitleIndex();
+    // Ids of movies rows written by CatalogImport without TMDB details, as far as this instance
+    // has seen. Kept up to date whenever a movies row is read, and cleared when details are added.
+    private final BitSet sparseMovieIds = new BitSet();
     private String NAMESPACE = "moviedb";
 
 
     public void initialize() throws Exception{
+        initialize(Boolean.parseBoolean(System.getenv("SCALARDB_STORAGE_FAST_PATH")));
+    }
+
+    // With storageFastPath, single-partition lookups go straight to the storage API instead of
+    // through a consensus-commit transaction. Those reads do not take part in transactions, so they
+    // can see records of transactions that have not committed yet. Writes always use transactions.
+    public void initialize(boolean storageFastPath) throws Exception{
         try {
-            Properties prop = new Properties();
-            prop.load(new FileInputStream(new File("src/main/resources/scalardb.properties")));
-    
-            TransactionFactory factory = TransactionFactory.create(prop);
+            Properties properties = loadProperties();
+            TransactionFactory factory = TransactionFactory.create(properties);
             manager = factory.getTransactionManager();
+            transactionExecutor = new TransactionExecutor(manager, TRANSACTION_MAX_ATTEMPTS, TRANSACTION_BASE_BACKOFF_MILLIS, TRANSACTION_MAX_BACKOFF_MILLIS);
+            scanStorage = StorageFactory.create(properties).getStorage();
+            if (storageFastPath) {
+                storage = scanStorage;
+                System.out.println("Single-partition lookups use the storage fast path");
+            }
+
+            rebuildTitleIndex();
         } catch (Exception e) {
             System.err.println("Failed to initialize ScalarDB transaction manager: " + e.getMessage());
             e.printStackTrace();
@@ -43,311 +90,529 @@ public class ScalarDBOperations {
         }
     }
 
-    //region Check if a movie is present
-    public boolean isUserInUsersTable(String userId) throws TransactionException {
-        DistributedTransaction tx = manager.start();
-        try {
-            Get getUser = Get.newBuilder()
-                .namespace(NAMESPACE)
-                .table("users")
-                .partitionKey(Key.ofText("userId", userId))
-                .build();
-
-            Optional<Result> result = tx.get(getUser);
-            tx.commit();
+    // Reads scalardb.properties from the file named by SCALARDB_PROPERTIES, or from the classpath.
+    // Connection pool sizes can be overridden with SCALARDB_POOL_* variables, and any scalar.db.*
+    // system property overrides the file.
+    static Properties loadProperties() throws IOException {
+        Properties prop = new Properties();
+        String path = System.getenv("SCALARDB_PROPERTIES");
+        if (path != null && !path.trim().isEmpty()) {
+            try (InputStream in = new FileInputStream(path.trim())) {
+                prop.load(in);
+            }
+        } else {
+            try (InputStream in = ScalarDBOperations.class.getResourceAsStream("/scalardb.properties")) {
+                if (in == null) {
+                    throw new IOException("scalardb.properties not found on the classpath");
+                }
+                prop.load(in);
+            }
+        }
 
-            return result.isPresent();
-        } catch (Exception e) {
-            tx.rollback();
-            throw new TransactionException("Failed to check if user is in users table: ", e.getMessage());
+        overrideFromEnv(prop, "SCALARDB_POOL_MIN_IDLE", "scalar.db.jdbc.connection_pool.min_idle");
+        overrideFromEnv(prop, "SCALARDB_POOL_MAX_IDLE", "scalar.db.jdbc.connection_pool.max_idle");
+        overrideFromEnv(prop, "SCALARDB_POOL_MAX_TOTAL", "scalar.db.jdbc.connection_pool.max_total");
+        for (String name : System.getProperties().stringPropertyNames()) {
+            if (name.startsWith("scalar.db.")) {
+                prop.setProperty(name, System.getProperty(name));
+            }
         }
+        return prop;
     }
-    
 
-    public boolean isMovieInMoviesTable(int movieId) throws TransactionException {
-        DistributedTransaction tx = manager.start();
-        try {
-            Get getMovie = Get.newBuilder()
-                .namespace(NAMESPACE)
-                .table("movies")
-                .partitionKey(Key.ofInt("movieId", movieId))
-                .build();
+    private static void overrideFromEnv(Properties prop, String envName, String propertyName) {
+        String value = System.getenv(envName);
+        if (value != null && !value.trim().isEmpty()) {
+            prop.setProperty(propertyName, value.trim());
+        }
+    }
 
-            Optional<Result> result = tx.get(getMovie);
-            tx.commit();
+    public void close() {
+        storage = null;
+        if (scanStorage != null) {
+            scanStorage.close();
+            scanStorage = null;
+        }
+        if (manager != null) {
+            manager.close();
+            manager = null;
+        }
+    }
 
-            return result.isPresent();
-        } catch (Exception e) {
-            tx.rollback();
-            throw new TransactionException("Failed to check if movie is in movies table: ", e.getMessage());
+    //region Check if a movie is present
+    public boolean isUserInUsersTable(String userId) throws TransactionException {
+        if (storage != null) {
+            return storageGet(userGet(userId)).isPresent();
         }
+        return transactionExecutor.execute("check if user is in users table", tx -> tx.get(userGet(userId)).isPresent());
+    }
+
+
+    // Answers from the in-memory title index, which holds every movie in the movies table
+    public boolean isMovieInTitleIndex(int movieId) {
+        return titleIndex.contains(movieId);
     }
 
     public boolean isMovieInList(String userId, int movieId, String listName) throws TransactionException {
-        DistributedTransaction tx = manager.start();
+        if (storage != null) {
+            return storageGet(listGet(userId, movieId, listName)).isPresent();
+        }
+        return transactionExecutor.execute("check if movie is in list", tx -> tx.get(listGet(userId, movieId, listName)).isPresent());
+    }
+
+    private Optional<Result> storageGet(Get get) throws TransactionException {
+        long start = System.nanoTime();
         try {
-            Get getMovie = Get.newBuilder()
-                .namespace(NAMESPACE)
-                .table(listName)
-                .partitionKey(Key.ofText("userId", userId))
-                .clusteringKey(Key.ofInt("movieId", movieId))
-                .build();
+            return storage.get(get);
+        } catch (com.scalar.db.exception.storage.ExecutionException e) {
+            storageFailures(get, "get").increment();
+            throw new TransactionException("Failed to read from storage: " + e.getMessage(), e, null);
+        } finally {
+            storageLatency(get, "get").observeNanos(System.nanoTime() - start);
+        }
+    }
 
-            Optional<Result> result = tx.get(getMovie);
-            tx.commit();
+    private interface PageConsumer {
+        void accept(List<Result> page) throws TransactionException;
+    }
 
-            return result.isPresent();
-        } catch (Exception e) {
-            tx.rollback();
-            throw new TransactionException("Failed to check if movie is in " + listName + ": ", e.getMessage());
+    // Reads every row of the table through a storage Scanner, which fetches rows as they are
+    // consumed instead of keeping the whole table in one transaction's read set, and hands them to
+    // consumer pageSize at a time. The rows are read outside any transaction, so a consumer that
+    // writes based on them reads them again in its own transaction.
+    private void scanTable(String table, int pageSize, PageConsumer consumer, String... projections) throws TransactionException {
+        Scan scan = Scan.newBuilder()
+            .namespace(NAMESPACE)
+            .table(table)
+            .all()
+            .projections(projections)
+            .build();
+        try (Scanner scanner = scanStorage.scan(scan)) {
+            List<Result> page = new ArrayList<>(pageSize);
+            for (Result result : scanner) {
+                page.add(result);
+                if (page.size() == pageSize) {
+                    consumer.accept(page);
+                    page = new ArrayList<>(pageSize);
+                }
+            }
+            if (!page.isEmpty()) {
+                consumer.accept(page);
+            }
+        } catch (com.scalar.db.exception.storage.ExecutionException | IOException e) {
+            storageFailures(scan, "scan").increment();
+            throw new TransactionException("Failed to scan " + table + ": " + e.getMessage(), e, null);
         }
     }
-    
+
+    // Fast-path calls skip TransactionExecutor, so they are recorded here by table and kind
+    private static Metrics.Histogram.Child storageLatency(Operation operation, String kind) {
+        return Metrics.REGISTRY.histogram("db_storage_operation_duration_seconds", "Storage fast-path latency", "table", "kind")
+            .labels(operation.forTable().orElse("unknown"), kind);
+    }
+
+    private static LongAdder storageFailures(Operation operation, String kind) {
+        return Metrics.REGISTRY.counter("db_storage_operation_failures_total", "Storage fast-path calls that failed", "table", "kind")
+            .labels(operation.forTable().orElse("unknown"), kind);
+    }
+
     //endregion
 
     //region add and remove movies
-    public void addMovieToMoviesTable(Map<String, String> movieDetails) throws TransactionException {
-        if (isMovieInMoviesTable(Integer.parseInt(movieDetails.get("id")))) {
-            System.out.println("Movie is already in movies table");
-            return;
-        }
-        DistributedTransaction tx = manager.start();
-        try {
-            String moviesTable = "movies";
-    
-            Put putMovie = Put.newBuilder()
-                .namespace(NAMESPACE)
-                .table(moviesTable)
-                .partitionKey(Key.ofInt("movieId", Integer.parseInt(movieDetails.get("id"))))
-                .textValue("title", movieDetails.get("title"))
-                .textValue("release_date", movieDetails.get("release_date"))
-                .textValue("poster_path", movieDetails.get("poster_path"))
-                .textValue("genre_ids", movieDetails.get("genre_ids"))
-                .build();
-            tx.put(putMovie);
-    
-            tx.commit();
-    
-        } catch (Exception e) {
-            tx.rollback();
-            e.printStackTrace();  // Print the stack trace to understand the exception better
-            System.out.println("Failed to add movie to movies table: " + e.getMessage());
+
+    // Adds the movie to the user's list, and to the movies table when it is not there yet, in a
+    // single transaction. Returns false without writing anything when the movie is missing from
+    // the movies table, or only has the sparse row of a catalog import, and no movie was given, so
+    // the caller can fetch it and call again. A given movie replaces a sparse row.
+    public boolean addMovieToCatalogAndList(String userId, int movieId, String listName, Movie movie) throws TransactionException {
+        AtomicBoolean catalogWrite = new AtomicBoolean();
+        boolean added = transactionExecutor.execute("add movie to catalog and list", tx -> {
+            catalogWrite.set(false);
+            if (movieCache.get(movieId) == null || isSparse(movieId)) {
+                Optional<Result> result = tx.get(movieGet(movieId));
+                if (result.isPresent() && !result.get().getBoolean("sparse")) {
+                    cacheMovie(result.get());
+                } else if (movie == null) {
+                    result.ifPresent(this::cacheMovie);
+                    return false;
+                } else {
+                    tx.put(moviePut(movie));
+                    catalogWrite.set(true);
+                }
+            }
+
+            if (!tx.get(listGet(userId, movieId, listName)).isPresent()) {
+                tx.put(listPut(userId, movieId, listName));
+                new ListChanges().add(userId, listName, "add", String.valueOf(movieId)).write(tx);
+            }
+            return true;
+        });
+
+        if (catalogWrite.get()) {
+            onMovieAdded(movie);
         }
+        return added;
     }
-    
-    public void addMovieToList(String userId, int movieId, String listName) throws TransactionException {
-        if (isMovieInList(userId, movieId, listName)) {
-            System.out.println("Movie is already in " + listName);
-            return;
+
+    // Writes movies rows from a bulk import in one transaction, marked sparse as the export has no
+    // details. Each row is read first and skipped when it exists, so rows added with full TMDB
+    // details, by this instance or another, are never overwritten; the title index only saves the
+    // reads for rows this instance already knows. Returns the number of rows written.
+    public int importMovies(List<Movie> movies) throws TransactionException {
+        List<Movie> candidates = new ArrayList<>(movies.size());
+        for (Movie movie : movies) {
+            if (!titleIndex.contains(movie.getId())) {
+                candidates.add(movie);
+            }
         }
-    
-        DistributedTransaction tx = manager.start();
-        try {
-            Put putList = Put.newBuilder()
-                .namespace(NAMESPACE)
-                .table(listName)
-                .partitionKey(Key.ofText("userId", userId))
-                .clusteringKey(Key.ofInt("movieId", movieId))
-                .build();
-            tx.put(putList);
-    
-            tx.commit();
-    
-        } catch (Exception e) {
-            tx.rollback();
-            e.printStackTrace();  // Print the stack trace to understand the exception better
-            System.out.println("Failed to add movie to " + listName + ": " + e.getMessage());
+        if (candidates.isEmpty()) {
+            return 0;
         }
+
+        List<Movie> written = transactionExecutor.execute("import movies", tx -> {
+            List<Movie> missing = new ArrayList<>(candidates.size());
+            List<Put> puts = new ArrayList<>(candidates.size());
+            for (Movie movie : candidates) {
+                if (!tx.get(movieGet(movie.getId())).isPresent()) {
+                    missing.add(movie);
+                    puts.add(moviePut(movie, true));
+                }
+            }
+            if (!puts.isEmpty()) {
+                tx.put(puts);
+            }
+            return missing;
+        });
+        for (Movie movie : written) {
+            setSparse(movie.getId(), true);
+            titleIndex.add(movie.getId(), movie.getTitle());
+        }
+        return written.size();
     }
-    
-    public void removeMovieFromList(String userId, int movieId, String listName) throws TransactionException {
-        if (!isMovieInList(userId, movieId, listName)) {
-            System.out.println("Unable to remove a movie that is not in" + listName);
-            return;
+
+    private Put moviePut(Movie movie) {
+        return moviePut(movie, false);
+    }
+
+    private Put moviePut(Movie movie, boolean sparse) {
+        return Put.newBuilder()
+            .namespace(NAMESPACE)
+            .table("movies")
+            .partitionKey(Key.ofInt("movieId", movie.getId()))
+            .textValue("title", movie.getTitle())
+            .textValue("release_date", movie.getReleaseDate())
+            .textValue("poster_path", movie.getPosterPath())
+            .textValue("genre_ids", movie.getGenreIdsText())
+            .booleanValue("sparse", sparse)
+            .build();
+    }
+
+    private boolean isSparse(int movieId) {
+        synchronized (sparseMovieIds) {
+            return sparseMovieIds.get(movieId);
         }
-        DistributedTransaction tx = manager.start();
-        try {
-            // Build the delete request
-            Delete deleteMovie = Delete.newBuilder()
-                .namespace(NAMESPACE)
-                .table(listName)
-                .partitionKey(Key.ofText("userId", userId))
-                .clusteringKey(Key.ofInt("movieId", movieId))
-                .build();
-    
-            // Execute the delete request
-            tx.delete(deleteMovie);
-            tx.commit();
-        } catch (Exception e) {
-            tx.rollback();
-            e.printStackTrace();  // Print the stack trace to understand the exception better
-            System.out.println("Failed to remove movie from " + listName + ": " + e.getMessage());
+    }
+
+    private void setSparse(int movieId, boolean sparse) {
+        synchronized (sparseMovieIds) {
+            sparseMovieIds.set(movieId, sparse);
         }
     }
-    
+
+    // True when the movies table has the movie with its TMDB details, not just an imported title
+    public boolean hasMovieDetails(int movieId) {
+        return titleIndex.contains(movieId) && !isSparse(movieId);
+    }
+
+    private Get listGet(String userId, int movieId, String listName) {
+        return Get.newBuilder()
+            .namespace(NAMESPACE)
+            .table(listName)
+            .partitionKey(Key.ofText("userId", userId))
+            .clusteringKey(Key.ofInt("movieId", movieId))
+            .build();
+    }
+
+    private Put listPut(String userId, int movieId, String listName) {
+        return Put.newBuilder()
+            .namespace(NAMESPACE)
+            .table(listName)
+            .partitionKey(Key.ofText("userId", userId))
+            .clusteringKey(Key.ofInt("movieId", movieId))
+            .build();
+    }
+
+    private Delete listDelete(String userId, int movieId, String listName) {
+        return Delete.newBuilder()
+            .namespace(NAMESPACE)
+            .table(listName)
+            .partitionKey(Key.ofText("userId", userId))
+            .clusteringKey(Key.ofInt("movieId", movieId))
+            .build();
+    }
+
+    private interface PageRead<T> {
+        Page<T> read(DistributedTransaction tx) throws Exception;
+    }
+
+    // Reads the version stamp of one of the user's lists ("watchlist", "watched", FRIENDS_LIST or
+    // FRIEND_REQUESTS_LIST; 0 when the list has not changed since list_versions was added) in tx,
+    // then the page itself unless unchanged accepts the version. The version and the items come
+    // from the same transaction, so they always match.
+    private <T> Page<T> versionedPage(DistributedTransaction tx, String userId, String list, LongPredicate unchanged,
+                                      PageRead<T> page) throws Exception {
+        long version = tx.get(listVersionGet(userId, list)).map(result -> result.getBigInt("version")).orElse(0L);
+        if (unchanged.test(version)) {
+            return Page.unchanged(version);
+        }
+        return page.read(tx).withVersion(version);
+    }
+
+    private Get listVersionGet(String userId, String list) {
+        return Get.newBuilder()
+            .namespace(NAMESPACE)
+            .table("list_versions")
+            .partitionKey(Key.ofText("userId", userId))
+            .clusteringKey(Key.ofText("list", list))
+            .build();
+    }
+
+    // Written in the same transaction as every change to the list. The stamp is random rather
+    // than a counter so writers need no read; readers only compare stamps for equality.
+    private Put listVersionPut(String userId, String list) {
+        long version;
+        do {
+            version = ThreadLocalRandom.current().nextLong();
+        } while (version == 0);
+        return Put.newBuilder()
+            .namespace(NAMESPACE)
+            .table("list_versions")
+            .partitionKey(Key.ofText("userId", userId))
+            .clusteringKey(Key.ofText("list", list))
+            .bigIntValue("version", version)
+            .build();
+    }
+
+    // List writes always run in a transaction, also with the storage fast path, because their
+    // change log entries need a sequence number from the user's change_log_heads row
+    public void addMovieToList(String userId, int movieId, String listName) throws TransactionException {
+        transactionExecutor.execute("add movie to list", tx -> {
+            if (tx.get(listGet(userId, movieId, listName)).isPresent()) {
+                System.out.println("Movie is already in " + listName);
+                return null;
+            }
+            tx.put(listPut(userId, movieId, listName));
+            new ListChanges().add(userId, listName, "add", String.valueOf(movieId)).write(tx);
+            return null;
+        });
+    }
+
+    public void removeMovieFromList(String userId, int movieId, String listName) throws TransactionException {
+        transactionExecutor.execute("remove movie from list", tx -> {
+            if (!tx.get(listGet(userId, movieId, listName)).isPresent()) {
+                System.out.println("Unable to remove a movie that is not in " + listName);
+                return null;
+            }
+            tx.delete(listDelete(userId, movieId, listName));
+            new ListChanges().add(userId, listName, "remove", String.valueOf(movieId)).write(tx);
+            return null;
+        });
+    }
+
     public void moveMovieFromWatchlistToWatched(String userId, int movieId) throws TransactionException {
-        DistributedTransaction tx = manager.start();
-        try {
+        transactionExecutor.execute("move movie from watchlist to watched", tx -> {
             // Check if the movie is in the watchlist
-            Get getWatchlistMovie = Get.newBuilder()
-                .namespace(NAMESPACE)
-                .table("watchlist")
-                .partitionKey(Key.ofText("userId", userId))
-                .clusteringKey(Key.ofInt("movieId", movieId))
-                .build();
-            Optional<Result> watchlistResult = tx.get(getWatchlistMovie);
-    
-            if (!watchlistResult.isPresent()) {
-                tx.rollback();
+            if (!tx.get(listGet(userId, movieId, "watchlist")).isPresent()) {
                 System.out.println("Movie is not in the watchlist.");
-                return;
+                return null;
             }
-    
-            // Add the movie to the watched list
-            Put putWatchedMovie = Put.newBuilder()
-                .namespace(NAMESPACE)
-                .table("watched")
-                .partitionKey(Key.ofText("userId", userId))
-                .clusteringKey(Key.ofInt("movieId", movieId))
-                .build();
-            tx.put(putWatchedMovie);
-    
-            // Remove the movie from the watchlist
-            Delete deleteWatchlistMovie = Delete.newBuilder()
-                .namespace(NAMESPACE)
-                .table("watchlist")
-                .partitionKey(Key.ofText("userId", userId))
-                .clusteringKey(Key.ofInt("movieId", movieId))
-                .build();
-            tx.delete(deleteWatchlistMovie);
-    
-            // Commit the transaction
-            tx.commit();
-        } catch (Exception e) {
-            tx.rollback();
-            e.printStackTrace();
-            System.out.println("Failed to move movie from watchlist to watched: " + e.getMessage());
-        }
-    }
-    
-    //endregion
-        
-    //region search
 
+            // Add the movie to the watched list and remove it from the watchlist
+            tx.put(listPut(userId, movieId, "watched"));
+            tx.delete(listDelete(userId, movieId, "watchlist"));
+            new ListChanges()
+                .add(userId, "watchlist", "remove", String.valueOf(movieId))
+                .add(userId, "watched", "add", String.valueOf(movieId))
+                .write(tx);
+            return null;
+        });
+    }
 
+    // Returns the movieIds that have no movies row, or only a sparse one from a catalog import, in
+    // the order given
+    public List<Integer> findMoviesWithoutDetails(List<Integer> movieIds) throws TransactionException {
+        List<Movie> found = transactionExecutor.execute("find movies without details", tx -> getMovieDetails(tx, movieIds));
+        Set<Integer> foundIds = new HashSet<>();
+        for (Movie movie : found) {
+            if (!isSparse(movie.getId())) {
+                foundIds.add(movie.getId());
+            }
+        }
+        List<Integer> missing = new ArrayList<>();
+        for (int movieId : movieIds) {
+            if (!foundIds.contains(movieId)) {
+                missing.add(movieId);
+            }
+        }
+        return missing;
+    }
 
-    
+    // Applies "add" or "remove" on listName, or "move" from the watchlist to watched, to each movie in
+    // a single transaction, and returns each movie's outcome in order. Added movies that have no
+    // movies row are written from catalogMovies, or come back as not_found when it has none.
+    public List<ListBatchResult> applyListBatch(String userId, String operation, String listName, List<Integer> movieIds,
+                                                Map<Integer, Movie> catalogMovies) throws TransactionException {
+        List<Movie> catalogWrites = new ArrayList<>();
+        List<ListBatchResult> results = transactionExecutor.execute("apply list batch", tx -> {
+            catalogWrites.clear();
+            ListChanges changes = new ListChanges();
+            List<ListBatchResult> outcomes = new ArrayList<>(movieIds.size());
+            for (int movieId : movieIds) {
+                String status;
+                switch (operation) {
+                    case "add":
+                        status = addToList(tx, userId, movieId, listName, catalogMovies.get(movieId), catalogWrites);
+                        if (status.equals(ListBatchResult.ADDED)) {
+                            changes.add(userId, listName, "add", String.valueOf(movieId));
+                        }
+                        break;
+                    case "remove":
+                        if (tx.get(listGet(userId, movieId, listName)).isPresent()) {
+                            tx.delete(listDelete(userId, movieId, listName));
+                            changes.add(userId, listName, "remove", String.valueOf(movieId));
+                            status = ListBatchResult.REMOVED;
+                        } else {
+                            status = ListBatchResult.UNCHANGED;
+                        }
+                        break;
+                    case "move":
+                        // Same as MovieService.moveMovieFromWatchlistToWatched
+                        if (tx.get(listGet(userId, movieId, "watchlist")).isPresent()) {
+                            if (!tx.get(listGet(userId, movieId, "watched")).isPresent()) {
+                                tx.put(listPut(userId, movieId, "watched"));
+                            }
+                            tx.delete(listDelete(userId, movieId, "watchlist"));
+                            changes.add(userId, "watchlist", "remove", String.valueOf(movieId));
+                            changes.add(userId, "watched", "add", String.valueOf(movieId));
+                            status = ListBatchResult.MOVED;
+                        } else {
+                            status = ListBatchResult.UNCHANGED;
+                        }
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown list operation: " + operation);
+                }
+                outcomes.add(new ListBatchResult(movieId, status));
+            }
+            changes.write(tx);
+            return outcomes;
+        });
 
-    
-    
-    
+        for (Movie movie : catalogWrites) {
+            onMovieAdded(movie);
+        }
+        return results;
+    }
 
-    public Map<String, String> getMovieDetails(int movieId) throws TransactionException {
-        DistributedTransaction tx = manager.start();
-        try {
-            Get getMovie = Get.newBuilder()
-                .namespace(NAMESPACE)
-                .table("movies")
-                .partitionKey(Key.ofInt("movieId", movieId))
-                .build();
-    
-            Optional<Result> result = tx.get(getMovie);
-            tx.commit();
-    
-            if (result.isPresent()) {
-                Map<String, String> movieDetails = new HashMap<>();
-                movieDetails.put("id", String.valueOf(result.get().getInt("movieId")));
-                movieDetails.put("title", result.get().getText("title"));
-                movieDetails.put("release_date", result.get().getText("release_date"));
-                movieDetails.put("poster_path", result.get().getText("poster_path"));
-                movieDetails.put("genre_ids", result.get().getText("genre_ids"));
-                return movieDetails;
+    private String addToList(DistributedTransaction tx, String userId, int movieId, String listName, Movie movie,
+                             List<Movie> catalogWrites) throws Exception {
+        if (movieCache.get(movieId) == null || isSparse(movieId)) {
+            Optional<Result> result = tx.get(movieGet(movieId));
+            // A sparse row is kept when its details could not be fetched
+            if (result.isPresent() && (movie == null || !result.get().getBoolean("sparse"))) {
+                cacheMovie(result.get());
+            } else if (movie == null) {
+                return ListBatchResult.NOT_FOUND;
             } else {
-                System.out.println("Movie not found");
-                return null;
+                tx.put(moviePut(movie));
+                catalogWrites.add(movie);
             }
-        } catch (Exception e) {
-            tx.rollback();
-            throw new TransactionException("Failed to get movie details: ", e.getMessage());
         }
+
+        if (tx.get(listGet(userId, movieId, listName)).isPresent()) {
+            return ListBatchResult.UNCHANGED;
+        }
+        tx.put(listPut(userId, movieId, listName));
+        return ListBatchResult.ADDED;
     }
 
+    //endregion
 
-    public Map<String, String> getUserDetails(String userId) throws TransactionException {
-        DistributedTransaction tx = manager.start();
-        try {
-            Get getUser = Get.newBuilder()
-                .namespace(NAMESPACE)
-                .table("users")
-                .partitionKey(Key.ofText("userId", userId))
-                .build();
-    
-            Optional<Result> result = tx.get(getUser);
-            tx.commit();
-    
-            if (result.isPresent()) {
-                Result userResult = result.get();
-                Map<String, String> userDetails = new HashMap<>();
-                userDetails.put("userId", userResult.getText("userId"));
-                userDetails.put("email", userResult.getText("email"));
-                userDetails.put("password", userResult.getText("password"));
-                // Add any other fields you have in your users table
-                return userDetails;
-            } else {
+    //region search
+
+    public UserProfile getUserDetails(String userId) throws TransactionException {
+        Optional<Result> result = storage != null
+            ? storageGet(userGet(userId))
+            : transactionExecutor.execute("get user details", tx -> tx.get(userGet(userId)));
+
+        return result.map(ScalarDBOperations::toUserProfile).orElse(null);
+    }
+
+    private Get userGet(String userId) {
+        return Get.newBuilder()
+            .namespace(NAMESPACE)
+            .table("users")
+            .partitionKey(Key.ofText("userId", userId))
+            .build();
+    }
+
+    private Put userPut(UserProfile user) {
+        return Put.newBuilder()
+            .namespace(NAMESPACE)
+            .table("users")
+            .partitionKey(Key.ofText("userId", user.getUserId()))
+            .textValue("password", user.getPasswordHash())
+            .textValue("email", user.getEmail())
+            .build();
+    }
+
+    // Everything the profile page shows, read in one transaction: the user row and the first page
+    // of friends and of friend requests. Null when the user does not exist.
+    public ProfileView getProfileView(String userId, int limit) throws TransactionException {
+        return transactionExecutor.execute("get profile view", tx -> {
+            Optional<Result> user = tx.get(userGet(userId));
+            if (!user.isPresent()) {
                 return null;
             }
-        } catch (Exception e) {
-            tx.rollback();
-            throw new TransactionException("Failed to get user details: ", e.getMessage());
-        }
+            Page<Friend> friends = scanFriends(tx, userId, limit, null);
+            Page<FriendRequest> friendRequests = scanFriendRequests(tx, userId, limit, false, null);
+            return new ProfileView(toUserProfile(user.get()), friends, friendRequests);
+        });
     }
-    
+
+    private static UserProfile toUserProfile(Result result) {
+        return new UserProfile(result.getText("userId"), result.getText("email"), result.getText("password"));
+    }
+
     //endregion
 
     //region friends
 
-    public void addUserToUsersTable(Map<String, String> userDetails) throws TransactionException {
-        DistributedTransaction tx = manager.start();
-        try {
-            String usersTable = "users";
-    
-            Put putUser = Put.newBuilder()
-                .namespace(NAMESPACE)
-                .table(usersTable)
-                .partitionKey(Key.ofText("userId", userDetails.get("userId")))
-                .textValue("password", userDetails.get("password"))
-                .textValue("email", userDetails.get("email"))
-                .build();
-            tx.put(putUser);
-    
-            tx.commit();
-        } catch (Exception e) {
-            tx.rollback();
-            e.printStackTrace();  // Print the stack trace to understand the exception better
-            System.out.println("Failed to add user to users table: " + e.getMessage());
-        }
+    // Returns false when the userId is taken; the check and the put share a transaction, so of two
+    // concurrent registrations of one userId only one commits
+    public boolean addUserToUsersTable(UserProfile user) throws TransactionException {
+        return transactionExecutor.execute("add user to users table", tx -> {
+            if (tx.get(userGet(user.getUserId())).isPresent()) {
+                return false;
+            }
+            tx.put(userPut(user));
+            for (Put putPrefix : userSearchPuts(user.getUserId())) {
+                tx.put(putPrefix);
+            }
+            return true;
+        });
     }
-    
 
-    public void sendFriendRequest(String requesterId, String requesteeId) throws TransactionException {
-        DistributedTransaction tx = manager.start();
-        try {
+
+    // The friend request and friendship changes return false when there was nothing to change
+    public boolean sendFriendRequest(String requesterId, String requesteeId) throws TransactionException {
+        return transactionExecutor.execute("send friend request", tx -> {
             // Check if the friend request already exists
-            Get getRequest = Get.newBuilder()
-                .namespace(NAMESPACE)
-                .table("friend_requests")
-                .partitionKey(Key.ofText("requester_id", requesterId))
-                .clusteringKey(Key.ofText("requestee_id", requesteeId))
-                .build();
-    
-            Optional<Result> result = tx.get(getRequest);
-    
-            if (result.isPresent()) {
+            if (tx.get(friendRequestGet(requesterId, requesteeId)).isPresent()) {
                 System.out.println("Friend request already exists");
-                tx.rollback();
-                return;
+                return false;
             }
-    
+
             // If the friend request does not exist, create a new one
             Put putRequest = Put.newBuilder()
                 .namespace(NAMESPACE)
@@ -356,350 +621,867 @@ public class ScalarDBOperations {
                 .clusteringKey(Key.ofText("requestee_id", requesteeId))
                 .textValue("status", "pending")
                 .build();
-    
+
             tx.put(putRequest);
-            tx.commit();
-        } catch (Exception e) {
-            tx.rollback();
-            e.printStackTrace();
-            System.out.println("Failed to send friend request: " + e.getMessage());
-        }
+            tx.put(receivedRequestPut(requesterId, requesteeId, "pending"));
+            bumpFriendRequestVersions(tx, requesterId, requesteeId);
+            return true;
+        });
     }
-    
-    
-    public void acceptFriendRequest(String requesterId, String requesteeId) throws TransactionException {
-        DistributedTransaction tx = manager.start();
-        try {
+
+
+    public boolean acceptFriendRequest(String requesterId, String requesteeId) throws TransactionException {
+        return transactionExecutor.execute("accept friend request", tx -> {
             // Check if the friend request exists and is pending
-            Get getRequest = Get.newBuilder()
-                .namespace(NAMESPACE)
-                .table("friend_requests")
-                .partitionKey(Key.ofText("requester_id", requesterId))
-                .clusteringKey(Key.ofText("requestee_id", requesteeId))
-                .build();
-    
-            Optional<Result> result = tx.get(getRequest);
-    
-            if (result.isPresent() && "pending".equals(result.get().getText("status"))) {
-                // Add to friends table
-                Put putFriend1 = Put.newBuilder()
-                    .namespace(NAMESPACE)
-                    .table("friends")
-                    .partitionKey(Key.ofText("userId", requesterId))
-                    .clusteringKey(Key.ofText("friendId", requesteeId))
-                    .build();
-                tx.put(putFriend1);
-    
-                Put putFriend2 = Put.newBuilder()
-                    .namespace(NAMESPACE)
-                    .table("friends")
-                    .partitionKey(Key.ofText("userId", requesteeId))
-                    .clusteringKey(Key.ofText("friendId", requesterId))
-                    .build();
-                tx.put(putFriend2);
-    
-                // Remove the friend request from friend_requests table
-                Delete deleteRequest = Delete.newBuilder()
-                    .namespace(NAMESPACE)
-                    .table("friend_requests")
-                    .partitionKey(Key.ofText("requester_id", requesterId))
-                    .clusteringKey(Key.ofText("requestee_id", requesteeId))
-                    .build();
-                tx.delete(deleteRequest);
-    
-                tx.commit();
-            } else {
-                tx.rollback();
+            Optional<Result> result = tx.get(friendRequestGet(requesterId, requesteeId));
+
+            if (!result.isPresent() || !"pending".equals(result.get().getText("status"))) {
                 System.out.println("No pending friend request found to accept");
+                return false;
             }
-        } catch (Exception e) {
-            tx.rollback();
-            e.printStackTrace();
-            System.out.println("Failed to accept friend request: " + e.getMessage());
-        }
+
+            // Add to friends table
+            tx.put(friendPut(requesterId, requesteeId));
+            tx.put(friendPut(requesteeId, requesterId));
+
+            // Remove the friend request from friend_requests table
+            tx.delete(friendRequestDelete(requesterId, requesteeId));
+            tx.delete(receivedRequestDelete(requesterId, requesteeId));
+            bumpFriendRequestVersions(tx, requesterId, requesteeId);
+            new ListChanges()
+                .add(requesterId, FRIENDS_LIST, "add", requesteeId)
+                .add(requesteeId, FRIENDS_LIST, "add", requesterId)
+                .write(tx);
+            return true;
+        });
     }
-    
-    public void declineFriendRequest(String requesterId, String requesteeId) throws TransactionException {
-        DistributedTransaction tx = manager.start();
-        try {
+
+    public boolean declineFriendRequest(String requesterId, String requesteeId) throws TransactionException {
+        return transactionExecutor.execute("decline friend request", tx -> {
             // Check if the friend request exists and is pending
-            Get getRequest = Get.newBuilder()
-                .namespace(NAMESPACE)
-                .table("friend_requests")
-                .partitionKey(Key.ofText("requester_id", requesterId))
-                .clusteringKey(Key.ofText("requestee_id", requesteeId))
-                .build();
-    
-            Optional<Result> result = tx.get(getRequest);
-    
-            if (result.isPresent() && "pending".equals(result.get().getText("status"))) {
-                // Remove the friend request
-                Delete deleteRequest = Delete.newBuilder()
-                    .namespace(NAMESPACE)
-                    .table("friend_requests")
-                    .partitionKey(Key.ofText("requester_id", requesterId))
-                    .clusteringKey(Key.ofText("requestee_id", requesteeId))
-                    .build();
-                tx.delete(deleteRequest);
-    
-                tx.commit();
-            } else {
-                tx.rollback();
+            Optional<Result> result = tx.get(friendRequestGet(requesterId, requesteeId));
+
+            if (!result.isPresent() || !"pending".equals(result.get().getText("status"))) {
                 System.out.println("No pending friend request found to decline");
+                return false;
             }
-        } catch (Exception e) {
-            tx.rollback();
-            e.printStackTrace();
-            System.out.println("Failed to decline friend request: " + e.getMessage());
-        }
+
+            tx.delete(friendRequestDelete(requesterId, requesteeId));
+            tx.delete(receivedRequestDelete(requesterId, requesteeId));
+            bumpFriendRequestVersions(tx, requesterId, requesteeId);
+            return true;
+        });
     }
-    
-    public void removeFriendRequest(String requesterId, String requesteeId) throws TransactionException {
-        DistributedTransaction tx = manager.start();
-        try {
+
+    public boolean removeFriendRequest(String requesterId, String requesteeId) throws TransactionException {
+        return transactionExecutor.execute("remove friend request", tx -> {
             // Check if the friend request exists
-            Get getRequest = Get.newBuilder()
-                .namespace(NAMESPACE)
-                .table("friend_requests")
-                .partitionKey(Key.ofText("requester_id", requesterId))
-                .clusteringKey(Key.ofText("requestee_id", requesteeId))
-                .build();
-    
-            Optional<Result> result = tx.get(getRequest);
-    
-            if (result.isPresent()) {
-                // Remove the friend request from the friend_requests table
-                Delete deleteRequest = Delete.newBuilder()
-                    .namespace(NAMESPACE)
-                    .table("friend_requests")
-                    .partitionKey(Key.ofText("requester_id", requesterId))
-                    .clusteringKey(Key.ofText("requestee_id", requesteeId))
-                    .build();
-                tx.delete(deleteRequest);
-    
-                tx.commit();
-            } else {
-                tx.rollback();
+            if (!tx.get(friendRequestGet(requesterId, requesteeId)).isPresent()) {
                 System.out.println("No friend request found to remove");
+                return false;
             }
-        } catch (Exception e) {
-            tx.rollback();
-            e.printStackTrace();
-            System.out.println("Failed to remove friend request: " + e.getMessage());
+
+            tx.delete(friendRequestDelete(requesterId, requesteeId));
+            tx.delete(receivedRequestDelete(requesterId, requesteeId));
+            bumpFriendRequestVersions(tx, requesterId, requesteeId);
+            return true;
+        });
+    }
+
+
+    public boolean removeFriend(String userId, String friendId) throws TransactionException {
+        return transactionExecutor.execute("remove friend", tx -> {
+            if (!tx.get(friendGet(userId, friendId)).isPresent()) {
+                System.out.println("No friendship found to remove");
+                return false;
+            }
+
+            // Remove the friendship from both users' friend lists
+            tx.delete(friendDelete(userId, friendId));
+            tx.delete(friendDelete(friendId, userId));
+            new ListChanges()
+                .add(userId, FRIENDS_LIST, "remove", friendId)
+                .add(friendId, FRIENDS_LIST, "remove", userId)
+                .write(tx);
+            return true;
+        });
+    }
+
+    // Friend requests are not in the change log, only their list version changes
+    private void bumpFriendRequestVersions(DistributedTransaction tx, String requesterId, String requesteeId) throws Exception {
+        tx.put(listVersionPut(requesterId, FRIEND_REQUESTS_LIST));
+        tx.put(listVersionPut(requesteeId, FRIEND_REQUESTS_LIST));
+    }
+
+    private Get friendRequestGet(String requesterId, String requesteeId) {
+        return Get.newBuilder()
+            .namespace(NAMESPACE)
+            .table("friend_requests")
+            .partitionKey(Key.ofText("requester_id", requesterId))
+            .clusteringKey(Key.ofText("requestee_id", requesteeId))
+            .build();
+    }
+
+    private Delete friendRequestDelete(String requesterId, String requesteeId) {
+        return Delete.newBuilder()
+            .namespace(NAMESPACE)
+            .table("friend_requests")
+            .partitionKey(Key.ofText("requester_id", requesterId))
+            .clusteringKey(Key.ofText("requestee_id", requesteeId))
+            .build();
+    }
+
+    private Get friendGet(String userId, String friendId) {
+        return Get.newBuilder()
+            .namespace(NAMESPACE)
+            .table("friends")
+            .partitionKey(Key.ofText("userId", userId))
+            .clusteringKey(Key.ofText("friendId", friendId))
+            .build();
+    }
+
+    private Put friendPut(String userId, String friendId) {
+        return Put.newBuilder()
+            .namespace(NAMESPACE)
+            .table("friends")
+            .partitionKey(Key.ofText("userId", userId))
+            .clusteringKey(Key.ofText("friendId", friendId))
+            .build();
+    }
+
+    private Delete friendDelete(String userId, String friendId) {
+        return Delete.newBuilder()
+            .namespace(NAMESPACE)
+            .table("friends")
+            .partitionKey(Key.ofText("userId", userId))
+            .clusteringKey(Key.ofText("friendId", friendId))
+            .build();
+    }
+
+    // friend_requests_by_requestee mirrors friend_requests keyed by requestee, so that the
+    // requests a user received can be listed from a single partition
+    private Put receivedRequestPut(String requesterId, String requesteeId, String status) {
+        return Put.newBuilder()
+            .namespace(NAMESPACE)
+            .table("friend_requests_by_requestee")
+            .partitionKey(Key.ofText("requestee_id", requesteeId))
+            .clusteringKey(Key.ofText("requester_id", requesterId))
+            .textValue("status", status)
+            .build();
+    }
+
+    private Delete receivedRequestDelete(String requesterId, String requesteeId) {
+        return Delete.newBuilder()
+            .namespace(NAMESPACE)
+            .table("friend_requests_by_requestee")
+            .partitionKey(Key.ofText("requestee_id", requesteeId))
+            .clusteringKey(Key.ofText("requester_id", requesterId))
+            .build();
+    }
+
+    public int backfillFriendRequestsByRequestee(int chunkSize) throws TransactionException {
+        int[] copied = {0};
+        // Puts are idempotent, so an interrupted backfill can simply be run again
+        scanTable("friend_requests", chunkSize, page -> {
+            try {
+                transactionExecutor.execute("backfill friend requests", tx -> {
+                    for (Result result : page) {
+                        String requesterId = result.getText("requester_id");
+                        String requesteeId = result.getText("requestee_id");
+                        Optional<Result> request = tx.get(friendRequestGet(requesterId, requesteeId));
+                        if (request.isPresent()) {
+                            tx.put(receivedRequestPut(requesterId, requesteeId, request.get().getText("status")));
+                        }
+                    }
+                    return null;
+                });
+            } catch (TransactionException e) {
+                System.out.println("Backfill stopped after " + copied[0] + " rows");
+                throw e;
+            }
+            copied[0] += page.size();
+        }, "requester_id", "requestee_id");
+        return copied[0];
+    }
+
+    public boolean areFriends(String userId, String friendId) throws TransactionException {
+        Get getFriend = friendGet(userId, friendId);
+        if (storage != null) {
+            return storageGet(getFriend).isPresent();
         }
+        return transactionExecutor.execute("check friendship status", tx -> tx.get(getFriend).isPresent());
     }
-    
 
-    public void removeFriend(String userId, String friendId) throws TransactionException {
-        DistributedTransaction tx = manager.start();
-        try {
-            // Remove friend from the user's friend list
-            Delete deleteFriend1 = Delete.newBuilder()
+    // Pages through the list in movieId order; cursor is the last movieId of the previous page
+    public Page<Movie> listMoviesInUserList(String userId, String listName, int limit, Integer cursor) throws TransactionException {
+        return transactionExecutor.execute("list movies in user list", tx -> scanUserList(tx, userId, listName, limit, cursor));
+    }
+
+    // Like listMoviesInUserList, but with the list's version; see versionedPage
+    public Page<Movie> listMoviesInUserList(String userId, String listName, int limit, Integer cursor, LongPredicate unchanged) throws TransactionException {
+        return transactionExecutor.execute("list movies in user list", tx -> {
+            Page<Movie> page = versionedPage(tx, userId, listName, unchanged, pageTx -> scanUserList(pageTx, userId, listName, limit, cursor));
+            // A sparse movie gets its details from someone else's add, which does not touch this
+            // list's version, so a page showing one must not be answered with 304 later
+            if (!page.isUnchanged()) {
+                for (Movie movie : page.getItems()) {
+                    if (isSparse(movie.getId())) {
+                        return page.withoutVersion();
+                    }
+                }
+            }
+            return page;
+        });
+    }
+
+    private Page<Movie> scanUserList(DistributedTransaction tx, String userId, String listName, int limit, Integer cursor) throws Exception {
+        // Retrieve one page of movie IDs from the user's watchlist or watched list, plus one
+        // extra row to know whether another page exists
+        Scan scan = Scan.newBuilder()
+            .namespace(NAMESPACE)
+            .table(listName)
+            .partitionKey(Key.ofText("userId", userId))
+            .start(Key.ofInt("movieId", cursor == null ? Integer.MIN_VALUE : cursor), cursor == null)
+            .limit(limit + 1)
+            .build();
+
+        List<Result> results = tx.scan(scan);
+
+        List<Integer> movieIds = new ArrayList<>(Math.min(results.size(), limit));
+        for (Result result : results) {
+            if (movieIds.size() == limit) {
+                break;
+            }
+            movieIds.add(toListEntry(result).getMovieId());
+        }
+        String nextCursor = results.size() > limit ? String.valueOf(movieIds.get(limit - 1)) : null;
+
+        // Hydrate every referenced movie inside the same transaction
+        return new Page<>(getMovieDetails(tx, movieIds), nextCursor);
+    }
+
+    // Loads the movies rows for the given ids within tx, keeping the order of movieIds and
+    // skipping ids that have no movies row. Cached movies are served from movieCache and the
+    // remaining Gets run one after another; a transaction is not safe to use from several threads.
+    private List<Movie> getMovieDetails(DistributedTransaction tx, List<Integer> movieIds) throws Exception {
+        Map<Integer, Movie> found = new HashMap<>();
+        List<Integer> missing = new ArrayList<>();
+        for (int movieId : movieIds) {
+            Movie cached = movieCache.get(movieId);
+            if (cached != null) {
+                found.put(movieId, cached);
+            } else {
+                missing.add(movieId);
+            }
+        }
+        for (Movie loaded : loadMovieDetails(tx, missing)) {
+            found.put(loaded.getId(), loaded);
+        }
+
+        List<Movie> movies = new ArrayList<>(found.size());
+        for (int movieId : movieIds) {
+            Movie movie = found.get(movieId);
+            if (movie != null) {
+                movies.add(movie);
+            }
+        }
+        return movies;
+    }
+
+    private List<Movie> loadMovieDetails(DistributedTransaction tx, List<Integer> movieIds) throws Exception {
+        List<Movie> movies = new ArrayList<>(movieIds.size());
+        for (int movieId : movieIds) {
+            Optional<Result> result = tx.get(movieGet(movieId));
+            if (result.isPresent()) {
+                movies.add(cacheMovie(result.get()));
+            }
+        }
+        return movies;
+    }
+
+    private Get movieGet(int movieId) {
+        return Get.newBuilder()
+            .namespace(NAMESPACE)
+            .table("movies")
+            .partitionKey(Key.ofInt("movieId", movieId))
+            .build();
+    }
+
+    private Movie cacheMovie(Result result) {
+        Movie movie = toMovie(result);
+        movieCache.put(movie.getId(), movie);
+        setSparse(movie.getId(), result.getBoolean("sparse"));
+        return movie;
+    }
+
+    private void onMovieAdded(Movie movie) {
+        movieCache.put(movie.getId(), movie);
+        setSparse(movie.getId(), false);
+        titleIndex.add(movie.getId(), movie.getTitle());
+    }
+
+    public Map<String, Long> getMovieCacheStats() {
+        return movieCache.stats();
+    }
+
+    private static Movie toMovie(Result result) {
+        return new Movie(
+            result.getInt("movieId"),
+            result.getText("title"),
+            result.getText("release_date"),
+            result.getText("poster_path"),
+            Movie.parseGenreIds(result.getText("genre_ids")));
+    }
+
+    private static ListEntry toListEntry(Result result) {
+        return new ListEntry(result.getText("userId"), result.getInt("movieId"));
+    }
+
+    // Pages through the friends in friendId order; cursor is the last friendId of the previous page
+    public Page<Friend> listAllFriends(String userId, int limit, String cursor) throws TransactionException {
+        return transactionExecutor.execute("list friends", tx -> scanFriends(tx, userId, limit, cursor));
+    }
+
+    // Like listAllFriends, but with the friends list's version; see versionedPage
+    public Page<Friend> listAllFriends(String userId, int limit, String cursor, LongPredicate unchanged) throws TransactionException {
+        return transactionExecutor.execute("list friends", tx ->
+            versionedPage(tx, userId, FRIENDS_LIST, unchanged, pageTx -> scanFriends(pageTx, userId, limit, cursor)));
+    }
+
+    private Page<Friend> scanFriends(DistributedTransaction tx, String userId, int limit, String cursor) throws Exception {
+        Scan scan = Scan.newBuilder()
+            .namespace(NAMESPACE)
+            .table("friends")
+            .partitionKey(Key.ofText("userId", userId))
+            .start(Key.ofText("friendId", cursor == null ? "" : cursor), cursor == null)
+            .limit(limit + 1)
+            .build();
+
+        List<Friend> friends = new ArrayList<>();
+        for (Result result : tx.scan(scan)) {
+            friends.add(new Friend(result.getText("friendId")));
+        }
+
+        String nextCursor = null;
+        if (friends.size() > limit) {
+            friends = friends.subList(0, limit);
+            nextCursor = friends.get(limit - 1).getFriendId();
+        }
+        return new Page<>(friends, nextCursor);
+    }
+
+    // Sent requests come first, then received ones. The cursor names the scan the previous page
+    // ended in and the last clustering key it returned, e.g. "sent:bob" or "received:alice".
+    public Page<FriendRequest> listFriendRequests(String userId, int limit, String cursor) throws TransactionException {
+        return listFriendRequests(userId, limit, cursor, null);
+    }
+
+    // With unchanged set, also reads the friend requests list's version; see versionedPage
+    public Page<FriendRequest> listFriendRequests(String userId, int limit, String cursor, LongPredicate unchanged) throws TransactionException {
+        boolean inReceived;
+        String after;
+        if (cursor == null) {
+            inReceived = false;
+            after = null;
+        } else if (cursor.startsWith(SENT_REQUESTS_CURSOR)) {
+            inReceived = false;
+            after = cursor.substring(SENT_REQUESTS_CURSOR.length());
+        } else if (cursor.startsWith(RECEIVED_REQUESTS_CURSOR)) {
+            inReceived = true;
+            after = cursor.substring(RECEIVED_REQUESTS_CURSOR.length());
+        } else {
+            throw new IllegalArgumentException("Invalid friend request cursor: " + cursor);
+        }
+
+        return transactionExecutor.execute("list friend requests", tx -> unchanged == null
+            ? scanFriendRequests(tx, userId, limit, inReceived, after)
+            : versionedPage(tx, userId, FRIEND_REQUESTS_LIST, unchanged, pageTx -> scanFriendRequests(pageTx, userId, limit, inReceived, after)));
+    }
+
+    private Page<FriendRequest> scanFriendRequests(DistributedTransaction tx, String userId, int limit, boolean inReceived, String after) throws Exception {
+        List<FriendRequest> friendRequests = new ArrayList<>();
+
+        // Scan for requests sent by the user
+        if (!inReceived) {
+            Scan scanSent = Scan.newBuilder()
                 .namespace(NAMESPACE)
-                .table("friends")
-                .partitionKey(Key.ofText("userId", userId))
-                .clusteringKey(Key.ofText("friendId", friendId))
+                .table("friend_requests")
+                .partitionKey(Key.ofText("requester_id", userId))
+                .start(Key.ofText("requestee_id", after == null ? "" : after), after == null)
+                .limit(limit + 1)
                 .build();
-            tx.delete(deleteFriend1);
-    
-            // Remove friend from the friend's friend list
-            Delete deleteFriend2 = Delete.newBuilder()
+            for (Result result : tx.scan(scanSent)) {
+                friendRequests.add(toFriendRequest(result));
+            }
+        }
+
+        // Scan for requests received by the user once the sent ones are exhausted
+        if (friendRequests.size() <= limit) {
+            String receivedAfter = inReceived ? after : null;
+            Scan scanReceived = Scan.newBuilder()
                 .namespace(NAMESPACE)
-                .table("friends")
-                .partitionKey(Key.ofText("userId", friendId))
-                .clusteringKey(Key.ofText("friendId", userId))
+                .table("friend_requests_by_requestee")
+                .partitionKey(Key.ofText("requestee_id", userId))
+                .start(Key.ofText("requester_id", receivedAfter == null ? "" : receivedAfter), receivedAfter == null)
+                .limit(limit + 1 - friendRequests.size())
                 .build();
-            tx.delete(deleteFriend2);
-    
-            tx.commit();
-        } catch (Exception e) {
-            tx.rollback();
-            e.printStackTrace();
-            System.out.println("Failed to remove friend: " + e.getMessage());
+            for (Result result : tx.scan(scanReceived)) {
+                friendRequests.add(toFriendRequest(result));
+            }
+        }
+
+        String nextCursor = null;
+        if (friendRequests.size() > limit) {
+            friendRequests = friendRequests.subList(0, limit);
+            FriendRequest last = friendRequests.get(limit - 1);
+            nextCursor = userId.equals(last.getRequesterId())
+                ? SENT_REQUESTS_CURSOR + last.getRequesteeId()
+                : RECEIVED_REQUESTS_CURSOR + last.getRequesterId();
         }
+        return new Page<>(friendRequests, nextCursor);
     }
 
-    public boolean areFriends(String userId, String friendId) throws TransactionException {
-        DistributedTransaction tx = manager.start();
-        try {
-            Get getFriend = Get.newBuilder()
+    private static FriendRequest toFriendRequest(Result result) {
+        return new FriendRequest(result.getText("requester_id"), result.getText("requestee_id"), result.getText("status"));
+    }
+
+
+
+    // Every user is indexed under each lowercase prefix of their userId up to
+    // USER_SEARCH_PREFIX_LENGTH characters, so a search reads one partition of user_search_index
+    private List<Put> userSearchPuts(String userId) {
+        String normalized = userId.toLowerCase();
+        List<Put> puts = new ArrayList<>();
+        for (int length = 1; length <= Math.min(normalized.length(), USER_SEARCH_PREFIX_LENGTH); length++) {
+            puts.add(Put.newBuilder()
                 .namespace(NAMESPACE)
-                .table("friends")
-                .partitionKey(Key.ofText("userId", userId))
-                .clusteringKey(Key.ofText("friendId", friendId))
-                .build();
-    
-            Optional<Result> result = tx.get(getFriend);
-            tx.commit();
-    
-            return result.isPresent();
-        } catch (Exception e) {
-            tx.rollback();
-            throw new TransactionException("Failed to check friendship status: ", e.getMessage());
+                .table("user_search_index")
+                .partitionKey(Key.ofText("prefix", normalized.substring(0, length)))
+                .clusteringKey(Key.ofText("userId", userId))
+                .build());
         }
+        return puts;
     }
-    
-    public List<Map<String, String>> listMoviesInUserList(String userId, String listName) throws TransactionException {
-        DistributedTransaction tx = manager.start();
-        try {
-            // Retrieve the list of movie IDs from the user's watchlist or watched list
+
+    public Page<UserSummary> searchUsers(String query, int limit, String cursor) throws TransactionException {
+        Page<String> userIds = transactionExecutor.execute("search users", tx -> scanUserSearchIndex(tx, query, null, limit, cursor));
+
+        List<UserSummary> users = new ArrayList<>(userIds.getItems().size());
+        for (String userId : userIds.getItems()) {
+            users.add(new UserSummary(userId));
+        }
+        return new Page<>(users, userIds.getNextCursor());
+    }
+
+    // One page of a user search as seen by viewerId: the viewer is left out and every hit carries
+    // its friendship and pending request state, read with point lookups in the search transaction
+    public Page<UserSearchHit> searchUsersForViewer(String viewerId, String query, int limit, String cursor) throws TransactionException {
+        return transactionExecutor.execute("search users for viewer", tx -> {
+            Page<String> userIds = scanUserSearchIndex(tx, query, viewerId, limit, cursor);
+
+            List<UserSearchHit> hits = new ArrayList<>(userIds.getItems().size());
+            for (String userId : userIds.getItems()) {
+                hits.add(relationship(tx, viewerId, userId));
+            }
+            return new Page<>(hits, userIds.getNextCursor());
+        });
+    }
+
+    private UserSearchHit relationship(DistributedTransaction tx, String viewerId, String userId) throws Exception {
+        // Accepting a request removes it, so friends never have a pending request to look up
+        if (tx.get(friendGet(viewerId, userId)).isPresent()) {
+            return new UserSearchHit(userId, true, false, false);
+        }
+        boolean pendingSent = isPending(tx.get(friendRequestGet(viewerId, userId)));
+        boolean pendingReceived = !pendingSent && isPending(tx.get(friendRequestGet(userId, viewerId)));
+        return new UserSearchHit(userId, false, pendingSent, pendingReceived);
+    }
+
+    private static boolean isPending(Optional<Result> friendRequest) {
+        return friendRequest.isPresent() && "pending".equals(friendRequest.get().getText("status"));
+    }
+
+    // Returns the matching userIds in order, skipping excludedUserId when it is set. At most
+    // USER_SEARCH_MAX_SCANNED index rows are read per call; when that runs out first, the page may
+    // be short and its cursor is the last row read, so the next call carries on from there.
+    private Page<String> scanUserSearchIndex(DistributedTransaction tx, String query, String excludedUserId, int limit, String cursor) throws Exception {
+        String normalized = query.trim().toLowerCase();
+        String prefix = normalized.substring(0, Math.min(normalized.length(), USER_SEARCH_PREFIX_LENGTH));
+
+        // One extra row tells us whether another page exists
+        List<String> found = new ArrayList<>();
+        String start = cursor == null ? "" : cursor;
+        boolean startInclusive = cursor == null;
+        boolean exhausted = false;
+        int scanned = 0;
+        int maxScanned = Math.max(USER_SEARCH_MAX_SCANNED, limit + 1);
+        // Sparse matches for queries longer than the indexed prefix double the batch each round
+        int batchSize = limit + 1;
+        while (found.size() <= limit && !exhausted && scanned < maxScanned) {
+            int size = Math.min(batchSize, maxScanned - scanned);
             Scan scan = Scan.newBuilder()
                 .namespace(NAMESPACE)
-                .table(listName)
-                .partitionKey(Key.ofText("userId", userId))
+                .table("user_search_index")
+                .partitionKey(Key.ofText("prefix", prefix))
+                .start(Key.ofText("userId", start), startInclusive)
+                .limit(size)
                 .build();
-    
             List<Result> results = tx.scan(scan);
-            tx.commit();
-    
-            List<Map<String, String>> movies = new ArrayList<>();
+            exhausted = results.size() < size;
+            scanned += results.size();
+            batchSize *= 2;
+
             for (Result result : results) {
-                int movieId = result.getInt("movieId");
-                Map<String, String> movieDetails = getMovieDetails(movieId);
-                if (movieDetails != null) {
-                    movies.add(movieDetails);
+                String userId = result.getText("userId");
+                start = userId;
+                startInclusive = false;
+                // Queries longer than the indexed prefix are narrowed down here
+                if (userId.toLowerCase().startsWith(normalized) && !userId.equals(excludedUserId)) {
+                    found.add(userId);
                 }
             }
-            return movies;
-        } catch (Exception e) {
-            tx.rollback();
-            throw new TransactionException("Failed to list movies in user list: ", e.getMessage());
         }
+
+        String nextCursor = null;
+        if (found.size() > limit) {
+            found = found.subList(0, limit);
+            nextCursor = found.get(limit - 1);
+        } else if (!exhausted) {
+            nextCursor = start;
+        }
+        return new Page<>(found, nextCursor);
     }
 
-    public JsonNode listAllFriends(String userId) throws TransactionException {
-        DistributedTransaction tx = manager.start();
-        try {
+    public int backfillUserSearchIndex(int chunkSize) throws TransactionException {
+        int[] indexed = {0};
+        scanTable("users", chunkSize, page -> {
+            try {
+                transactionExecutor.execute("backfill user search index", tx -> {
+                    for (Result result : page) {
+                        String userId = result.getText("userId");
+                        if (tx.get(userGet(userId)).isPresent()) {
+                            for (Put putPrefix : userSearchPuts(userId)) {
+                                tx.put(putPrefix);
+                            }
+                        }
+                    }
+                    return null;
+                });
+            } catch (TransactionException e) {
+                System.out.println("Backfill stopped after " + indexed[0] + " rows");
+                throw e;
+            }
+            indexed[0] += page.size();
+        }, "userId");
+        return indexed[0];
+    }
+
+    public Page<Movie> searchMovies(String query, int limit, int offset) throws TransactionException {
+        // Ask the index for one extra id to know whether another page exists
+        List<Integer> movieIds = titleIndex.search(query, offset, limit + 1);
+        String nextCursor = null;
+        if (movieIds.size() > limit) {
+            movieIds = movieIds.subList(0, limit);
+            nextCursor = String.valueOf(offset + limit);
+        }
+
+        List<Integer> pageIds = movieIds;
+        List<Movie> movies = transactionExecutor.execute("search movies", tx -> getMovieDetails(tx, pageIds));
+        return new Page<>(movies, nextCursor);
+    }
+
+    // Reads the movies table in pages outside any transaction, so a catalog import's worth of rows
+    // is neither held at once nor in one read set
+    private void rebuildTitleIndex() throws TransactionException {
+        scanTable("movies", TITLE_INDEX_PAGE_SIZE, page -> {
+            for (Result result : page) {
+                titleIndex.add(result.getInt("movieId"), result.getText("title"));
+                if (result.getBoolean("sparse")) {
+                    setSparse(result.getInt("movieId"), true);
+                }
+            }
+        }, "movieId", "title", "sparse");
+        System.out.println("Indexed " + titleIndex.size() + " movie titles");
+    }
+
+    public Map<String, Map<String, Long>> getTransactionStats() {
+        return transactionExecutor.stats();
+    }
+
+    //endregion
+
+    //region change log
+
+    // Collects the list changes made in one transaction. write() appends them to each user's
+    // change log under the next sequence numbers and stamps a new version on every changed list.
+    private final class ListChanges {
+        private final Map<String, List<String[]>> changesByUser = new LinkedHashMap<>();
+
+        ListChanges add(String userId, String list, String op, String item) {
+            changesByUser.computeIfAbsent(userId, key -> new ArrayList<>()).add(new String[] {list, op, item});
+            return this;
+        }
+
+        void write(DistributedTransaction tx) throws Exception {
+            long now = System.currentTimeMillis();
+            for (Map.Entry<String, List<String[]>> entry : changesByUser.entrySet()) {
+                String userId = entry.getKey();
+                // Every writer reads and updates the head, so concurrent writers for one user
+                // conflict and sequence numbers commit in order without gaps
+                Optional<Result> head = tx.get(changeLogHeadGet(userId));
+                long seq = head.map(result -> result.getBigInt("seq")).orElse(0L);
+                long oldestAt = head.map(result -> result.getBigInt("oldest_at")).orElse(0L);
+                Set<String> lists = new LinkedHashSet<>();
+                for (String[] change : entry.getValue()) {
+                    seq++;
+                    tx.put(Put.newBuilder()
+                        .namespace(NAMESPACE)
+                        .table("change_log")
+                        .partitionKey(Key.ofText("userId", userId))
+                        .clusteringKey(Key.ofBigInt("seq", seq))
+                        .textValue("list", change[0])
+                        .textValue("op", change[1])
+                        .textValue("item", change[2])
+                        .bigIntValue("created_at", now)
+                        .build());
+                    lists.add(change[0]);
+                }
+                // oldest_at is 0 while the log is empty; the compactor only visits logs with an
+                // entry older than its cutoff
+                tx.put(Put.newBuilder()
+                    .namespace(NAMESPACE)
+                    .table("change_log_heads")
+                    .partitionKey(Key.ofText("userId", userId))
+                    .bigIntValue("seq", seq)
+                    .bigIntValue("oldest_at", oldestAt == 0 ? now : oldestAt)
+                    .build());
+                for (String list : lists) {
+                    tx.put(listVersionPut(userId, list));
+                }
+            }
+        }
+    }
+
+    private Get changeLogHeadGet(String userId) {
+        return Get.newBuilder()
+            .namespace(NAMESPACE)
+            .table("change_log_heads")
+            .partitionKey(Key.ofText("userId", userId))
+            .build();
+    }
+
+    // Returns up to limit changes after since. When since is 0, older than what compaction has
+    // left, or ahead of the log, returns the first page of a snapshot of the user's lists instead;
+    // snapshotCursor continues one. A snapshot's pages are read in separate transactions, and its
+    // seq is the log position of its first page, so the changes made while it is paged through are
+    // replayed on top of it afterwards.
+    public ChangeSet getChanges(String userId, long since, int limit, String snapshotCursor) throws TransactionException {
+        SnapshotCursor continued = snapshotCursor == null ? null : SnapshotCursor.parse(snapshotCursor);
+        return transactionExecutor.execute("get list changes", tx -> {
+            if (continued != null) {
+                return snapshotPage(tx, userId, continued, limit);
+            }
+
+            Optional<Result> head = tx.get(changeLogHeadGet(userId));
+            long seq = head.map(result -> result.getBigInt("seq")).orElse(0L);
+            long compactedThrough = head.map(result -> result.getBigInt("compacted_through")).orElse(0L);
+            if (needsSnapshot(since, seq, compactedThrough)) {
+                return snapshotPage(tx, userId, new SnapshotCursor(seq, SnapshotCursor.LISTS.get(0), ""), limit);
+            }
+
             Scan scan = Scan.newBuilder()
                 .namespace(NAMESPACE)
-                .table("friends")
+                .table("change_log")
                 .partitionKey(Key.ofText("userId", userId))
+                .start(Key.ofBigInt("seq", since), false)
+                .limit(limit + 1)
                 .build();
-    
             List<Result> results = tx.scan(scan);
+            boolean hasMore = results.size() > limit;
+            List<Result> entries = hasMore ? results.subList(0, limit) : results;
 
-            List<Map<String, String>> friends = new ArrayList<>();
-            for (Result result : results) {
-                Map<String, String> friendDetails = new HashMap<>();
-                friendDetails.put("friendId", result.getText("friendId"));
-                friends.add(friendDetails);
-                
+            // Added movies come with their details, like a list page would show them
+            List<Integer> addedMovieIds = new ArrayList<>();
+            for (Result result : entries) {
+                if (isMovieAddition(result)) {
+                    addedMovieIds.add(Integer.parseInt(result.getText("item")));
+                }
+            }
+            Map<Integer, Movie> addedMovies = new HashMap<>();
+            for (Movie movie : getMovieDetails(tx, addedMovieIds)) {
+                addedMovies.put(movie.getId(), movie);
             }
-            ObjectMapper mapper = new ObjectMapper();
-            return mapper.valueToTree(friends);
 
-        } catch (Exception e) {
-            tx.rollback();
-            throw new TransactionException("Failed to list friends: ", e.getMessage());
+            List<ListChange> changes = new ArrayList<>(entries.size());
+            long last = since;
+            for (Result result : entries) {
+                last = result.getBigInt("seq");
+                String item = result.getText("item");
+                Movie movie = isMovieAddition(result) ? addedMovies.get(Integer.parseInt(item)) : null;
+                changes.add(new ListChange(last, result.getText("list"), result.getText("op"), item, movie));
+            }
+            return ChangeSet.changes(last, changes, hasMore);
+        });
+    }
+
+    // The log holds every change after compactedThrough up to seq; a cursor outside that range
+    // cannot be served from it
+    static boolean needsSnapshot(long since, long seq, long compactedThrough) {
+        return since <= 0 || since < compactedThrough || since > seq;
+    }
+
+    private static boolean isMovieAddition(Result result) {
+        return "add".equals(result.getText("op")) && !FRIENDS_LIST.equals(result.getText("list"));
+    }
+
+    // Where a snapshot continues: the log seq it started at, the list it has got to, and the last
+    // item returned from that list, empty at the start of the list. Sent as "seq:list:item".
+    static final class SnapshotCursor {
+        static final List<String> LISTS = Arrays.asList("watchlist", "watched", FRIENDS_LIST);
+
+        final long seq;
+        final String list;
+        final String after;
+
+        SnapshotCursor(long seq, String list, String after) {
+            this.seq = seq;
+            this.list = list;
+            this.after = after;
         }
-    }    
 
-    public JsonNode listFriendRequests(String userId) throws TransactionException {
-        List<Map<String, String>> friendRequests = new ArrayList<>();
-        DistributedTransaction tx = manager.start();
-        try {
-            // Scan for requests sent by the user
-            Scan scanSent = Scan.newBuilder()
-                .namespace(NAMESPACE)
-                .table("friend_requests")
-                .partitionKey(Key.ofText("requester_id", userId))
-                .build();
-            List<Result> resultsSent = tx.scan(scanSent);
-            for (Result result : resultsSent) {
-                Map<String, String> request = new HashMap<>();
-                request.put("requester_id", result.getText("requester_id"));
-                request.put("requestee_id", result.getText("requestee_id"));
-                request.put("status", result.getText("status"));
-                friendRequests.add(request);
-            }
-    
-            // Scan for requests received by the user
-            Scan scanReceived = Scan.newBuilder()
-                .namespace(NAMESPACE)
-                .table("friend_requests")
-                .all()
-                .build();
-            List<Result> resultsReceived = tx.scan(scanReceived);
-            for (Result result : resultsReceived) {
-                if (result.getText("requestee_id").equals(userId)) {
-                    Map<String, String> request = new HashMap<>();
-                    request.put("requester_id", result.getText("requester_id"));
-                    request.put("requestee_id", result.getText("requestee_id"));
-                    request.put("status", result.getText("status"));
-                    friendRequests.add(request);
+        static SnapshotCursor parse(String text) {
+            String[] parts = text.split(":", 3);
+            if (parts.length != 3 || !LISTS.contains(parts[1])) {
+                throw new IllegalArgumentException("Invalid snapshot cursor: " + text);
+            }
+            try {
+                if (!parts[2].isEmpty() && !FRIENDS_LIST.equals(parts[1])) {
+                    Integer.parseInt(parts[2]);
                 }
+                return new SnapshotCursor(Long.parseLong(parts[0]), parts[1], parts[2]);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid snapshot cursor: " + text, e);
             }
-    
-            tx.commit();
-        } catch (Exception e) {
-            tx.rollback();
-            throw new TransactionException("Failed to list friend requests for " + userId, e.getMessage());
         }
-    
-        ObjectMapper mapper = new ObjectMapper();
-        return mapper.valueToTree(friendRequests);
+
+        @Override
+        public String toString() {
+            return seq + ":" + list + ":" + after;
+        }
     }
-    
 
+    // Reads up to limit items of the snapshot from cursor on, going through the lists in the order
+    // of SnapshotCursor.LISTS, and hydrates the movies like a list page
+    private ChangeSet snapshotPage(DistributedTransaction tx, String userId, SnapshotCursor cursor, int limit) throws Exception {
+        Map<String, List<String>> items = new HashMap<>();
+        String next = null;
+        int remaining = limit;
+        int first = SnapshotCursor.LISTS.indexOf(cursor.list);
+        for (int i = first; i < SnapshotCursor.LISTS.size() && next == null; i++) {
+            String list = SnapshotCursor.LISTS.get(i);
+            boolean friends = FRIENDS_LIST.equals(list);
+            String after = i == first ? cursor.after : "";
 
-    public JsonNode searchUsers(String query) throws TransactionException {
-        DistributedTransaction tx = manager.start();
-        try {
-            Scan scan = Scan.newBuilder()
+            Scan.B builder = Scan.newBuilder()
                 .namespace(NAMESPACE)
-                .table("users")
-                .all()
-                .build();
-    
-            List<Result> results = tx.scan(scan);
-            tx.commit();
-
-            List<Map<String, String>> users = results.stream()
-                .filter(result -> result.getText("userId").toLowerCase().contains(query.toLowerCase()))
-                .map(result -> {
-                    Map<String, String> userDetails = new HashMap<>();
-                    userDetails.put("userId", result.getText("userId"));
-                    return userDetails;
-                })
-                .collect(Collectors.toList());
-
-            ObjectMapper mapper = new ObjectMapper();
-            return mapper.valueToTree(users);
-        } catch (Exception e) {
-            tx.rollback();
-            throw new TransactionException("Failed to search users: ", e.getMessage());
+                .table(list)
+                .partitionKey(Key.ofText("userId", userId));
+            if (!after.isEmpty()) {
+                builder = builder.start(friends ? Key.ofText("friendId", after) : Key.ofInt("movieId", Integer.parseInt(after)), false);
+            }
+            List<Result> results = tx.scan(builder.limit(remaining + 1).build());
+
+            List<String> listItems = new ArrayList<>();
+            for (Result result : results) {
+                if (listItems.size() == remaining) {
+                    break;
+                }
+                listItems.add(friends ? result.getText("friendId") : String.valueOf(result.getInt("movieId")));
+            }
+            items.put(list, listItems);
+            remaining -= listItems.size();
+
+            if (results.size() > listItems.size()) {
+                next = new SnapshotCursor(cursor.seq, list, listItems.get(listItems.size() - 1)).toString();
+            } else if (remaining == 0 && i + 1 < SnapshotCursor.LISTS.size()) {
+                next = new SnapshotCursor(cursor.seq, SnapshotCursor.LISTS.get(i + 1), "").toString();
+            }
+        }
+
+        return ChangeSet.snapshot(cursor.seq,
+            getMovieDetails(tx, toMovieIds(items.get("watchlist"))),
+            getMovieDetails(tx, toMovieIds(items.get("watched"))),
+            items.getOrDefault(FRIENDS_LIST, new ArrayList<>()),
+            next);
+    }
+
+    private static List<Integer> toMovieIds(List<String> items) {
+        List<Integer> movieIds = new ArrayList<>();
+        if (items != null) {
+            for (String item : items) {
+                movieIds.add(Integer.parseInt(item));
+            }
         }
+        return movieIds;
     }
-    public List<Map<String, String>> searchMovies(String query) throws TransactionException {
-        DistributedTransaction tx = manager.start();
-        try {
+
+    // Deletes change log entries created before cutoffMillis, at most chunkSize per user and one
+    // transaction per user, and records how far each log has been trimmed so clients with an
+    // older cursor get a snapshot. The heads are read with the paged scan outside transactions,
+    // and only logs whose oldest entry is past the cutoff get a transaction. Returns the number of
+    // entries deleted.
+    public int compactChangeLog(long cutoffMillis, int chunkSize) throws TransactionException {
+        int[] deleted = {0};
+        scanTable("change_log_heads", chunkSize, page -> {
+            for (Result result : page) {
+                long oldestAt = result.getBigInt("oldest_at");
+                if (oldestAt > 0 && oldestAt < cutoffMillis) {
+                    deleted[0] += compactChangeLog(result.getText("userId"), cutoffMillis, chunkSize);
+                }
+            }
+        }, "userId", "oldest_at");
+        return deleted[0];
+    }
+
+    private int compactChangeLog(String userId, long cutoffMillis, int chunkSize) throws TransactionException {
+        return transactionExecutor.execute("compact change log", tx -> {
+            // Read so that a concurrent list write, which updates the head, conflicts
+            tx.get(changeLogHeadGet(userId));
             Scan scan = Scan.newBuilder()
                 .namespace(NAMESPACE)
-                .table("movies")
-                .all()
+                .table("change_log")
+                .partitionKey(Key.ofText("userId", userId))
+                .limit(chunkSize + 1)
                 .build();
-    
-            List<Result> results = tx.scan(scan);
-            tx.commit();
-    
-            List<Map<String, String>> movies = results.stream()
-                .filter(result -> result.getText("title").toLowerCase().contains(query.toLowerCase()))
-                .map(result -> {
-                    Map<String, String> movieDetails = new HashMap<>();
-                    movieDetails.put("id", String.valueOf(result.getInt("movieId")));
-                    movieDetails.put("title", result.getText("title"));
-                    movieDetails.put("release_date", result.getText("release_date"));
-                    movieDetails.put("poster_path", result.getText("poster_path"));
-                    movieDetails.put("genre_ids", result.getText("genre_ids"));
-                    return movieDetails;
-                })
-                .collect(Collectors.toList());
-    
-            return movies;
-        } catch (Exception e) {
-            tx.rollback();
-            throw new TransactionException("Failed to search movies: ", e.getMessage());
-        }
+            long compactedThrough = 0;
+            long oldestAt = 0;
+            int count = 0;
+            for (Result result : tx.scan(scan)) {
+                if (count == chunkSize || result.getBigInt("created_at") >= cutoffMillis) {
+                    oldestAt = result.getBigInt("created_at");
+                    break;
+                }
+                compactedThrough = result.getBigInt("seq");
+                tx.delete(Delete.newBuilder()
+                    .namespace(NAMESPACE)
+                    .table("change_log")
+                    .partitionKey(Key.ofText("userId", userId))
+                    .clusteringKey(Key.ofBigInt("seq", compactedThrough))
+                    .build());
+                count++;
+            }
+
+            Put.B head = Put.newBuilder()
+                .namespace(NAMESPACE)
+                .table("change_log_heads")
+                .partitionKey(Key.ofText("userId", userId))
+                .bigIntValue("oldest_at", oldestAt);
+            if (count > 0) {
+                head = head.bigIntValue("compacted_through", compactedThrough);
+            }
+            tx.put(head.build());
+            return count;
+        });
     }
 
     //endregion
@@ -0,0 +1,90 @@
+package com.example.moviedb;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.scalar.db.api.DistributedTransactionAdmin;
+import com.scalar.db.api.TableMetadata;
+import com.scalar.db.io.DataType;
+import com.scalar.db.service.TransactionFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+// Creates the namespace, tables and coordinator tables described by schema.json, skipping any that
+// already exist, and adds the columns that tables created by an older schema.json are missing. Does
+// the same as the schema loader with and then without --alter, for databases set up from code such
+// as the SQLite files the benchmarks and load tests run against.
+// Run with: mvn exec:java -Dexec.mainClass=com.example.moviedb.SchemaInstaller
+public class SchemaInstaller {
+
+    public static void main(String[] args) throws Exception {
+        install(ScalarDBOperations.loadProperties());
+        System.exit(0);
+    }
+
+    public static void install(Properties properties) throws Exception {
+        JsonNode schema;
+        try (InputStream in = SchemaInstaller.class.getResourceAsStream("/schema.json")) {
+            if (in == null) {
+                throw new IOException("schema.json not found on the classpath");
+            }
+            schema = Json.MAPPER.readTree(in);
+        }
+
+        DistributedTransactionAdmin admin = TransactionFactory.create(properties).getTransactionAdmin();
+        try {
+            Iterator<Map.Entry<String, JsonNode>> tables = schema.fields();
+            while (tables.hasNext()) {
+                Map.Entry<String, JsonNode> table = tables.next();
+                String[] name = table.getKey().split("\\.", 2);
+                admin.createNamespace(name[0], true);
+                if (admin.tableExists(name[0], name[1])) {
+                    addMissingColumns(admin, name[0], name[1], table.getValue());
+                } else {
+                    admin.createTable(name[0], name[1], toTableMetadata(table.getValue()), true);
+                    System.out.println("Created table " + table.getKey());
+                }
+            }
+            admin.createCoordinatorTables(true);
+        } finally {
+            admin.close();
+        }
+    }
+
+    private static void addMissingColumns(DistributedTransactionAdmin admin, String namespace, String tableName, JsonNode table) throws Exception {
+        Set<String> existing = admin.getTableMetadata(namespace, tableName).getColumnNames();
+        Iterator<Map.Entry<String, JsonNode>> columns = table.get("columns").fields();
+        while (columns.hasNext()) {
+            Map.Entry<String, JsonNode> column = columns.next();
+            if (!existing.contains(column.getKey())) {
+                admin.addNewColumnToTable(namespace, tableName, column.getKey(), toDataType(column.getValue()));
+                System.out.println("Added column " + namespace + "." + tableName + "." + column.getKey());
+            }
+        }
+    }
+
+    private static DataType toDataType(JsonNode type) {
+        return DataType.valueOf(type.asText().trim().toUpperCase());
+    }
+
+    private static TableMetadata toTableMetadata(JsonNode table) {
+        TableMetadata.Builder builder = TableMetadata.newBuilder();
+        Iterator<Map.Entry<String, JsonNode>> columns = table.get("columns").fields();
+        while (columns.hasNext()) {
+            Map.Entry<String, JsonNode> column = columns.next();
+            builder.addColumn(column.getKey(), toDataType(column.getValue()));
+        }
+        for (JsonNode partitionKey : table.get("partition-key")) {
+            builder.addPartitionKey(partitionKey.asText());
+        }
+        if (table.has("clustering-key")) {
+            for (JsonNode clusteringKey : table.get("clustering-key")) {
+                builder.addClusteringKey(clusteringKey.asText());
+            }
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,90 @@
+package com.example.moviedb;
+
+import io.javalin.http.Handler;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Decides which threads run request handlers. In platform mode handlers run on the Jetty pool,
+// so its size caps how many requests can block on ScalarDB or TMDB at once. In virtual mode each
+// blocking handler gets its own virtual thread and the Jetty pool only does the network I/O.
+public class ServerThreads {
+    private final int minThreads;
+    private final int maxThreads;
+    private final int idleTimeoutMillis;
+    // Null in platform mode
+    private final ExecutorService handlerExecutor;
+
+    public ServerThreads(int minThreads, int maxThreads, int idleTimeoutMillis, ExecutorService handlerExecutor) {
+        this.minThreads = minThreads;
+        this.maxThreads = maxThreads;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.handlerExecutor = handlerExecutor;
+    }
+
+    public static ServerThreads fromEnvironment() {
+        int minThreads = envInt("JETTY_MIN_THREADS", 8);
+        int maxThreads = envInt("JETTY_MAX_THREADS", 200);
+        int idleTimeoutMillis = envInt("JETTY_IDLE_TIMEOUT_MS", 60_000);
+
+        ExecutorService handlerExecutor = null;
+        if ("virtual".equalsIgnoreCase(System.getenv("SERVER_THREAD_MODE"))) {
+            handlerExecutor = newVirtualThreadExecutor();
+            if (handlerExecutor == null) {
+                System.out.println("Virtual threads need Java 21 or later; handlers run on the Jetty pool");
+            }
+        }
+        System.out.println("Request handlers run on " + (handlerExecutor == null ? "the Jetty pool" : "virtual threads")
+            + ", Jetty pool " + minThreads + "-" + maxThreads + " threads");
+        return new ServerThreads(minThreads, maxThreads, idleTimeoutMillis, handlerExecutor);
+    }
+
+    public Server createServer() {
+        QueuedThreadPool pool = new QueuedThreadPool(maxThreads, minThreads, idleTimeoutMillis);
+        pool.setName("jetty");
+        return new Server(pool);
+    }
+
+    // Wraps a handler that blocks. The wrapped handler has finished setting the response by the
+    // time the returned future completes, so the future's own value is ignored.
+    public Handler blocking(Handler handler) {
+        if (handlerExecutor == null) {
+            return handler;
+        }
+        return ctx -> ctx.future(CompletableFuture.runAsync(() -> {
+            try {
+                handler.handle(ctx);
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }, handlerExecutor), result -> {});
+    }
+
+    public void close() {
+        if (handlerExecutor != null) {
+            handlerExecutor.shutdown();
+        }
+    }
+
+    // Looked up reflectively so the app still builds and runs on Java 11
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (NoSuchMethodException e) {
+            return null;
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Failed to create virtual thread executor", e);
+        }
+    }
+
+    private static int envInt(String name, int defaultValue) {
+        String value = System.getenv(name);
+        return value == null || value.trim().isEmpty() ? defaultValue : Integer.parseInt(value.trim());
+    }
+}
@@ -0,0 +1,187 @@
+package com.example.moviedb;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Non-blocking TMDB client. One HttpClient is shared so connections are kept alive and reused,
+// and responses are parsed into just the fields the app uses. Bodies are read whole before parsing:
+// a parser blocking on a body stream would hold one of the threads the client needs to deliver it.
+public class TmdbClient {
+    private static final ObjectMapper MAPPER = Json.MAPPER;
+    private static final int SEARCH_RESULT_LIMIT = 20;
+
+    private final String baseUrl;
+    private final String apiKey;
+    private final Duration requestTimeout;
+    private final ExecutorService executor;
+    private final HttpClient httpClient;
+    private final Metrics metrics;
+
+    public static class TmdbException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        private final int statusCode;
+
+        public TmdbException(int statusCode, String url) {
+            super("TMDB returned HTTP " + statusCode + " for " + url.replaceAll("api_key=[^&]*", "api_key=***"));
+            this.statusCode = statusCode;
+        }
+
+        public int getStatusCode() {
+            return statusCode;
+        }
+    }
+
+    public TmdbClient(String baseUrl, String apiKey, Duration connectTimeout, Duration requestTimeout, int threads) {
+        this(baseUrl, apiKey, connectTimeout, requestTimeout, threads, Metrics.REGISTRY);
+    }
+
+    public TmdbClient(String baseUrl, String apiKey, Duration connectTimeout, Duration requestTimeout, int threads, Metrics metrics) {
+        this.baseUrl = baseUrl;
+        this.metrics = metrics;
+        this.apiKey = apiKey;
+        this.requestTimeout = requestTimeout;
+        this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "tmdb-client");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.httpClient = HttpClient.newBuilder()
+            .connectTimeout(connectTimeout)
+            .executor(executor)
+            .build();
+    }
+
+    public static TmdbClient fromEnvironment() {
+        return new TmdbClient(
+            envOrDefault("TMDB_BASE_URL", "https://api.themoviedb.org/3"),
+            envOrDefault("TMDB_API_KEY", "your_api_key"),
+            Duration.ofMillis(Long.parseLong(envOrDefault("TMDB_CONNECT_TIMEOUT_MS", "2000"))),
+            Duration.ofMillis(Long.parseLong(envOrDefault("TMDB_REQUEST_TIMEOUT_MS", "5000"))),
+            Integer.parseInt(envOrDefault("TMDB_CLIENT_THREADS", "4")));
+    }
+
+    // Resolves to an array holding at most the first 20 entries of the response's "results"
+    public CompletableFuture<JsonNode> searchMovies(String query) {
+        String url = baseUrl + "/search/movie?api_key=" + apiKey + "&query=" + URLEncoder.encode(query, StandardCharsets.UTF_8);
+        return send("search", url).thenApply(body -> parse(body, this::readSearchResults));
+    }
+
+    // Resolves to id, title, release_date, poster_path, genres and genre_ids, like in search results
+    public CompletableFuture<JsonNode> fetchMovieDetails(int movieId) {
+        String url = baseUrl + "/movie/" + movieId + "?api_key=" + apiKey;
+        return send("movie", url).thenApply(body -> parse(body, this::readMovieDetails));
+    }
+
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    // endpoint labels the call on /metrics; the URL itself holds the API key and the query
+    private CompletableFuture<byte[]> send(String endpoint, String url) {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(url))
+            .timeout(requestTimeout)
+            .header("Accept", "application/json")
+            .GET()
+            .build();
+        long start = System.nanoTime();
+        return httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray())
+            .whenComplete((response, error) -> {
+                // Time to the whole response; timeouts and connection failures count as "error"
+                metrics.histogram("tmdb_request_duration_seconds", "TMDB request latency", "endpoint")
+                    .labels(endpoint).observeNanos(System.nanoTime() - start);
+                metrics.counter("tmdb_responses_total", "TMDB responses by HTTP status", "endpoint", "status")
+                    .labels(endpoint, error == null ? String.valueOf(response.statusCode()) : "error").increment();
+            })
+            .thenApply(response -> {
+                if (response.statusCode() != 200) {
+                    throw new UncheckedIOException(new TmdbException(response.statusCode(), url));
+                }
+                return response.body();
+            });
+    }
+
+    private interface BodyReader {
+        JsonNode read(JsonParser parser) throws IOException;
+    }
+
+    private static JsonNode parse(byte[] body, BodyReader reader) {
+        try (JsonParser parser = MAPPER.getFactory().createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Expected a JSON object from TMDB");
+            }
+            return reader.read(parser);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private JsonNode readSearchResults(JsonParser parser) throws IOException {
+        ArrayNode results = MAPPER.createArrayNode();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if ("results".equals(field) && value == JsonToken.START_ARRAY) {
+                while (parser.nextToken() != JsonToken.END_ARRAY) {
+                    if (results.size() < SEARCH_RESULT_LIMIT) {
+                        results.add((JsonNode) MAPPER.readTree(parser));
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return results;
+    }
+
+    private JsonNode readMovieDetails(JsonParser parser) throws IOException {
+        ObjectNode movie = MAPPER.createObjectNode();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            switch (field) {
+                case "id":
+                case "title":
+                case "release_date":
+                case "poster_path":
+                case "genres":
+                    movie.set(field, MAPPER.readTree(parser));
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+
+        if (movie.has("genres") && movie.get("genres").isArray()) {
+            ArrayNode genreIds = movie.putArray("genre_ids");
+            for (JsonNode genre : movie.get("genres")) {
+                genreIds.add(genre.get("id").asInt());
+            }
+        }
+        return movie;
+    }
+
+    private static String envOrDefault(String name, String defaultValue) {
+        String value = System.getenv(name);
+        return value == null || value.trim().isEmpty() ? defaultValue : value.trim();
+    }
+}
@@ -0,0 +1,151 @@
+package com.example.moviedb;
+
+import com.scalar.db.api.DistributedTransaction;
+import com.scalar.db.api.DistributedTransactionManager;
+import com.scalar.db.exception.transaction.CommitConflictException;
+import com.scalar.db.exception.transaction.CrudConflictException;
+import com.scalar.db.exception.transaction.TransactionException;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// Runs a unit of work in a transaction: start, run, commit, and roll back on failure. Conflicts
+// are retried with jittered exponential backoff, and every call is counted under its operation name.
+public class TransactionExecutor {
+
+    public interface TransactionalWork<T> {
+        T run(DistributedTransaction tx) throws Exception;
+    }
+
+    // The counters and latency histogram are also exported on /metrics, labelled by operation
+    private static class OperationStats {
+        final LongAdder calls;
+        final LongAdder attempts;
+        final LongAdder commits;
+        final LongAdder rollbacks;
+        final LongAdder conflicts;
+        final LongAdder failures;
+        final Metrics.Histogram.Child latency;
+        final LongAdder totalNanos = new LongAdder();
+        final AtomicLong maxNanos = new AtomicLong();
+
+        OperationStats(Metrics metrics, String operation) {
+            calls = metrics.counter("db_operation_calls_total", "Database operations run", "operation").labels(operation);
+            attempts = metrics.counter("db_operation_attempts_total", "Transactions started, retries included", "operation").labels(operation);
+            commits = metrics.counter("db_operation_commits_total", "Transactions committed", "operation").labels(operation);
+            rollbacks = metrics.counter("db_operation_rollbacks_total", "Transactions rolled back", "operation").labels(operation);
+            conflicts = metrics.counter("db_operation_conflicts_total", "Transactions that hit a conflict", "operation").labels(operation);
+            failures = metrics.counter("db_operation_failures_total", "Database operations that failed after all attempts", "operation").labels(operation);
+            latency = metrics.histogram("db_operation_duration_seconds", "Database operation latency, retries included", "operation").labels(operation);
+        }
+
+        Map<String, Long> snapshot() {
+            Map<String, Long> snapshot = new LinkedHashMap<>();
+            long callCount = calls.sum();
+            snapshot.put("calls", callCount);
+            snapshot.put("attempts", attempts.sum());
+            snapshot.put("commits", commits.sum());
+            snapshot.put("rollbacks", rollbacks.sum());
+            snapshot.put("conflicts", conflicts.sum());
+            snapshot.put("failures", failures.sum());
+            snapshot.put("avgLatencyMicros", callCount == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(totalNanos.sum() / callCount));
+            snapshot.put("maxLatencyMicros", TimeUnit.NANOSECONDS.toMicros(maxNanos.get()));
+            return snapshot;
+        }
+    }
+
+    private final DistributedTransactionManager manager;
+    private final int maxAttempts;
+    private final long baseBackoffMillis;
+    private final long maxBackoffMillis;
+    private final Metrics metrics;
+    private final ConcurrentHashMap<String, OperationStats> stats = new ConcurrentHashMap<>();
+
+    public TransactionExecutor(DistributedTransactionManager manager, int maxAttempts, long baseBackoffMillis, long maxBackoffMillis) {
+        this(manager, maxAttempts, baseBackoffMillis, maxBackoffMillis, Metrics.REGISTRY);
+    }
+
+    public TransactionExecutor(DistributedTransactionManager manager, int maxAttempts, long baseBackoffMillis, long maxBackoffMillis, Metrics metrics) {
+        this.manager = manager;
+        this.maxAttempts = maxAttempts;
+        this.baseBackoffMillis = baseBackoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+        this.metrics = metrics;
+    }
+
+    // Work must be safe to run more than once, since a conflicting attempt is rolled back and rerun
+    public <T> T execute(String operation, TransactionalWork<T> work) throws TransactionException {
+        OperationStats operationStats = stats.computeIfAbsent(operation, name -> new OperationStats(metrics, name));
+        operationStats.calls.increment();
+        long start = System.nanoTime();
+        try {
+            for (int attempt = 1; ; attempt++) {
+                operationStats.attempts.increment();
+                DistributedTransaction tx = manager.start();
+                try {
+                    T result = work.run(tx);
+                    tx.commit();
+                    operationStats.commits.increment();
+                    return result;
+                } catch (Exception e) {
+                    rollbackQuietly(tx);
+                    operationStats.rollbacks.increment();
+                    if (isConflict(e)) {
+                        operationStats.conflicts.increment();
+                        if (attempt < maxAttempts) {
+                            backOff(attempt);
+                            continue;
+                        }
+                    }
+                    operationStats.failures.increment();
+                    throw new TransactionException("Failed to " + operation + " after " + attempt + " attempt(s): " + e.getMessage(), e, tx.getId());
+                }
+            }
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            operationStats.totalNanos.add(elapsed);
+            operationStats.maxNanos.accumulateAndGet(elapsed, Math::max);
+            operationStats.latency.observeNanos(elapsed);
+        }
+    }
+
+    public Map<String, Map<String, Long>> stats() {
+        Map<String, Map<String, Long>> snapshot = new TreeMap<>();
+        stats.forEach((operation, operationStats) -> snapshot.put(operation, operationStats.snapshot()));
+        return snapshot;
+    }
+
+    // Conflicts may also arrive wrapped in other exceptions
+    static boolean isConflict(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof CrudConflictException || cause instanceof CommitConflictException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void rollbackQuietly(DistributedTransaction tx) {
+        try {
+            tx.rollback();
+        } catch (Exception e) {
+            System.out.println("Failed to roll back transaction: " + e.getMessage());
+        }
+    }
+
+    private void backOff(int attempt) throws TransactionException {
+        long ceiling = Math.min(maxBackoffMillis, baseBackoffMillis << Math.min(attempt - 1, 20));
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(ceiling + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TransactionException("Interrupted while waiting to retry: " + e.getMessage(), e, null);
+        }
+    }
+}
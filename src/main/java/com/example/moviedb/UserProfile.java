@@ -0,0 +1,33 @@
+package com.example.moviedb;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+
+// A row of the users table
+@JsonPropertyOrder({"userId", "email", "password"})
+public final class UserProfile {
+    private final String userId;
+    private final String email;
+    private final String passwordHash;
+
+    public UserProfile(String userId, String email, String passwordHash) {
+        this.userId = userId;
+        this.email = email;
+        this.passwordHash = passwordHash;
+    }
+
+    @JsonProperty("userId")
+    public String getUserId() {
+        return userId;
+    }
+
+    @JsonProperty("email")
+    public String getEmail() {
+        return email;
+    }
+
+    @JsonProperty("password")
+    public String getPasswordHash() {
+        return passwordHash;
+    }
+}
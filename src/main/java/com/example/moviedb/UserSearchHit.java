@@ -0,0 +1,42 @@
+package com.example.moviedb;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+
+// A user search result annotated with its relationship to the user who searched
+@JsonPropertyOrder({"userId", "isFriend", "pendingSent", "pendingReceived"})
+public final class UserSearchHit {
+    private final String userId;
+    private final boolean friend;
+    private final boolean pendingSent;
+    private final boolean pendingReceived;
+
+    public UserSearchHit(String userId, boolean friend, boolean pendingSent, boolean pendingReceived) {
+        this.userId = userId;
+        this.friend = friend;
+        this.pendingSent = pendingSent;
+        this.pendingReceived = pendingReceived;
+    }
+
+    @JsonProperty("userId")
+    public String getUserId() {
+        return userId;
+    }
+
+    @JsonProperty("isFriend")
+    public boolean isFriend() {
+        return friend;
+    }
+
+    // The searching user has sent this user a request that is still pending
+    @JsonProperty("pendingSent")
+    public boolean isPendingSent() {
+        return pendingSent;
+    }
+
+    // This user has sent the searching user a request that is still pending
+    @JsonProperty("pendingReceived")
+    public boolean isPendingReceived() {
+        return pendingReceived;
+    }
+}
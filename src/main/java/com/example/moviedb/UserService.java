@@ -1,39 +1,27 @@
 package com.example.moviedb;
 
 import com.scalar.db.exception.transaction.TransactionException;
-import com.fasterxml.jackson.databind.JsonNode;
 
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.function.LongPredicate;
 
 public class UserService {
     private ScalarDBOperations scalarDBOperations;
+    private final EventHub events;
 
-    public UserService() {
-        this.scalarDBOperations = new ScalarDBOperations();
-        try {
-            scalarDBOperations.initialize();
-        } catch (Exception e) {
-            throw new RuntimeException("Failed to initialize ScalarDB", e);
-        }
+    public UserService(ScalarDBOperations scalarDBOperations, EventHub events) {
+        this.scalarDBOperations = scalarDBOperations;
+        this.events = events;
     }
 
     public boolean registerUser(String userId, String password, String email) {
         try {
-            if (scalarDBOperations.isUserInUsersTable(userId)) {
-                return false; // User already exists
-            }
-
-            Map<String, String> userDetails = new HashMap<>();
-            userDetails.put("userId", userId);
-            userDetails.put("password", hashPassword(password)); // Hashing the password
-            userDetails.put("email", email);
-
-            scalarDBOperations.addUserToUsersTable(userDetails);
-            return true;
+            UserProfile user = new UserProfile(userId, email, hashPassword(password)); // Hashing the password
+            return scalarDBOperations.addUserToUsersTable(user); // false when the user already exists
         } catch (TransactionException e) {
             e.printStackTrace();
             return false;
@@ -42,9 +30,9 @@ public class UserService {
 
     public boolean loginUser(String userId, String password) {
         try {
-            Map<String, String> userDetails = scalarDBOperations.getUserDetails(userId);
+            UserProfile userDetails = scalarDBOperations.getUserDetails(userId);
             if (userDetails != null) {
-                String storedPassword = userDetails.get("password");
+                String storedPassword = userDetails.getPasswordHash();
                 return verifyPassword(password, storedPassword); // You should implement password verification
             }
         } catch (Exception e) {
@@ -53,7 +41,7 @@ public class UserService {
         return false;
     }
 
-    public Map<String, String> getUserProfile(String userId) {
+    public UserProfile getUserProfile(String userId) {
         try {
             return scalarDBOperations.getUserDetails(userId);
         } catch (Exception e) {
@@ -62,6 +50,10 @@ public class UserService {
         }
     }
 
+    public ProfileView getProfileView(String userId, int limit) throws TransactionException {
+        return scalarDBOperations.getProfileView(userId, limit);
+    }
+
     private String hashPassword(String password) {
         try {
             MessageDigest digest = MessageDigest.getInstance("SHA-256");
@@ -85,43 +77,71 @@ public class UserService {
 
     //region friends
 
-    public JsonNode searchUsers(String query) throws TransactionException {
+    public Page<UserSummary> searchUsers(String query, int limit, String cursor) throws TransactionException {
         try{
-            return scalarDBOperations.searchUsers(query);
+            return scalarDBOperations.searchUsers(query, limit, cursor);
         } catch (Exception e) {
             throw new TransactionException("Failed to search users: ", e.getMessage());
         }
     }
 
-    
+    public Page<UserSearchHit> searchUsersForViewer(String viewerId, String query, int limit, String cursor) throws TransactionException {
+        return scalarDBOperations.searchUsersForViewer(viewerId, query, limit, cursor);
+    }
 
+    // Each change is pushed to the event streams of both users once its transaction has committed
     public void sendFriendRequest(String requesterId, String requesteeId) throws TransactionException {
-        scalarDBOperations.sendFriendRequest(requesterId, requesteeId);
+        if (scalarDBOperations.sendFriendRequest(requesterId, requesteeId)) {
+            publishFriendRequestEvent("friend-request-sent", requesterId, requesteeId);
+        }
     }
 
     public void acceptFriendRequest(String requesterId, String requesteeId) throws TransactionException {
-        scalarDBOperations.acceptFriendRequest(requesterId, requesteeId);
+        if (scalarDBOperations.acceptFriendRequest(requesterId, requesteeId)) {
+            publishFriendRequestEvent("friend-request-accepted", requesterId, requesteeId);
+        }
     }
 
     public void declineFriendRequest(String requesterId, String requesteeId) throws TransactionException {
-        scalarDBOperations.declineFriendRequest(requesterId, requesteeId);
+        if (scalarDBOperations.declineFriendRequest(requesterId, requesteeId)) {
+            publishFriendRequestEvent("friend-request-declined", requesterId, requesteeId);
+        }
     }
 
     public void removeFriendRequest(String userId, String friendId) throws TransactionException {
-        scalarDBOperations.removeFriendRequest(userId, friendId);
+        if (scalarDBOperations.removeFriendRequest(userId, friendId)) {
+            publishFriendRequestEvent("friend-request-removed", userId, friendId);
+        }
     }
 
     public void removeFriend(String userId, String friendId) throws TransactionException {
-        scalarDBOperations.removeFriend(userId, friendId);
+        if (scalarDBOperations.removeFriend(userId, friendId)) {
+            Map<String, String> payload = new LinkedHashMap<>();
+            payload.put("userId", userId);
+            payload.put("friendId", friendId);
+            events.publish(userId, "friend-removed", payload);
+            events.publish(friendId, "friend-removed", payload);
+        }
+    }
+
+    private void publishFriendRequestEvent(String event, String requesterId, String requesteeId) {
+        Map<String, String> payload = new LinkedHashMap<>();
+        payload.put("requester_id", requesterId);
+        payload.put("requestee_id", requesteeId);
+        events.publish(requesterId, event, payload);
+        events.publish(requesteeId, event, payload);
     }
 
-    public JsonNode listAllFriends(String userId) throws TransactionException {
-        return scalarDBOperations.listAllFriends(userId);
+    public EventHub.Connection subscribe(String userId, EventHub.Sink sink) {
+        return events.subscribe(userId, sink);
+    }
 
+    public Page<Friend> listAllFriends(String userId, int limit, String cursor, LongPredicate unchanged) throws TransactionException {
+        return scalarDBOperations.listAllFriends(userId, limit, cursor, unchanged);
     }
 
-    public JsonNode listFriendRequests(String userId) throws TransactionException {
-        return scalarDBOperations.listFriendRequests(userId);
+    public Page<FriendRequest> listFriendRequests(String userId, int limit, String cursor, LongPredicate unchanged) throws TransactionException {
+        return scalarDBOperations.listFriendRequests(userId, limit, cursor, unchanged);
     }
 
     //endregion
@@ -0,0 +1,17 @@
+package com.example.moviedb;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+// A user search result without the searching user's relationship to it; see UserSearchHit
+public final class UserSummary {
+    private final String userId;
+
+    public UserSummary(String userId) {
+        this.userId = userId;
+    }
+
+    @JsonProperty("userId")
+    public String getUserId() {
+        return userId;
+    }
+}
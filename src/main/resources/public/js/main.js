@@ -38,22 +38,11 @@ async function handleLogin(event) {
     }
 }
 
-async function loadProfileInfo() {
-    const userId = getUserId();
-    if (!userId) {
-        showError('User not logged in');
-        return;
-    }
-    try {
-        const response = await makeApiRequest(`/api/userProfile?userId=${userId}`, 'GET');
-        const profile = await response.json();
-        const profileInfo = document.querySelector('#profile-info');
-        profileInfo.setAttribute('style', 'white-space: pre;');
-        profileInfo.textContent = `User ID: ${profile.userId}\r\n\r\nEmail: ${profile.email}`;
-        profileInfo.classList.add('profile-info');
-    } catch (error) {
-        showError('Failed to load profile information');
-    }
+function displayProfileInfo(profile) {
+    const profileInfo = document.querySelector('#profile-info');
+    profileInfo.setAttribute('style', 'white-space: pre;');
+    profileInfo.textContent = `User ID: ${profile.userId}\r\n\r\nEmail: ${profile.email}`;
+    profileInfo.classList.add('profile-info');
 }
 
 function signOut() {
@@ -94,8 +83,7 @@ async function loadList(listName) {
         return;
     }
     try {
-        const response = await makeApiRequest(`/api/list${listName}?userId=${userId}`, 'GET');
-        const movies = await response.json();
+        const movies = await fetchAllPages(`/api/list${listName}?userId=${userId}`);
         displayMovies(movies, listName);
     } catch (error) {
         showError('Failed to load list' + listName);
@@ -109,8 +97,7 @@ async function loadFriendWatchedList(friendId) {
         return;
     }
     try {
-        const response = await makeApiRequest(`/api/listwatched?userId=${friendId}`, 'GET');
-        const movies = await response.json();
+        const movies = await fetchAllPages(`/api/listwatched?userId=${friendId}`);
         displayMovies(movies, "watched");
     } catch (error) {
         showError(`Failed to load ${friendId}'s watched list`);
@@ -198,6 +185,43 @@ async function deleteMovie(movieId, listName) {
     }
 }
 
+// Sends the checked movies of a list to /api/listBatch in one request and reloads the list
+async function applyToSelected(operation, listName) {
+    const userId = getUserId();
+    if (!userId) {
+        showError('User not logged in');
+        return;
+    }
+    const movieIds = Array.from(document.querySelectorAll(`#${listName} .movie-select:checked`))
+        .map(checkbox => Number(checkbox.dataset.movieId));
+    if (movieIds.length === 0) {
+        showError('No movies selected');
+        return;
+    }
+    try {
+        const response = await makeApiRequest('/api/listBatch', 'POST', {
+            userId: userId,
+            operation: operation,
+            listName: listName,
+            movieIds: movieIds
+        });
+        if (!response.ok) {
+            throw new Error(await response.text());
+        }
+        const results = await response.json();
+        const failed = results.filter(result => result.status === 'failed').length;
+        if (failed > 0) {
+            showError(`Failed to update ${failed} of ${results.length} movies`);
+        } else {
+            showSuccess(`Updated ${results.length} movies`);
+        }
+        loadList(listName);
+    } catch (error) {
+        showError('Failed to update selected movies');
+        console.error('Error updating selected movies:', error);
+    }
+}
+
 function removeMovieElement(movieId, listName) {
     const movieElement = document.querySelector(`#movie-${listName}-${movieId}`);
     if (movieElement) {
@@ -250,40 +274,17 @@ function displayUserSearchResults(users) {
     });
 }
 
+// One request per page of results: each hit already says whether it is a friend or has a
+// pending request in either direction, and the current user is left out
 async function performUserSearch(query) {
     console.log("performusersearch");
     const userId = getUserId();
     try {
-        const response = await makeApiRequest(`/api/searchUsers?query=${encodeURIComponent(query)}`, 'GET');
-        let users = await response.json();
-        
-        // Remove the current user from the search results
-        users = users.filter(user => user.userId !== userId);
-        
-        // Fetch pending requests to check status
-        const requestsResponse = await makeApiRequest(`/api/listFriendRequests?userId=${userId}`, 'GET');
-        const pendingRequests = await requestsResponse.json();
-
-        // Fetch friends list to check friendship status
-        const friendsResponse = await makeApiRequest(`/api/listFriends?userId=${userId}`, 'GET');
-        const friendsList = await friendsResponse.json();
-
-        // Add request status and friendship status to user search results
-        users.forEach(user => {
-            const request = pendingRequests.find(req => 
-                (req.requester_id === userId && req.requestee_id === user.userId) || 
-                (req.requestee_id === userId && req.requester_id === user.userId)
-            );
-            const isFriend = friendsList.some(friend => friend.friendId === user.userId);
-            if (request) {
-                user.requestStatus = request.status;
-                user.requester_id = request.requester_id;
-                user.requestee_id = request.requestee_id;
-            } else if (isFriend) {
-                user.isFriend = true;
-            }
-        });
-
+        const response = await makeApiRequest(`/api/userSearchView?userId=${userId}&query=${encodeURIComponent(query)}`, 'GET');
+        if (!response.ok) {
+            throw new Error(`User search failed with status ${response.status}`);
+        }
+        const users = await response.json();
         displayUserSearchResults(users);
     } catch (error) {
         showError('Failed to search users');
@@ -341,6 +342,14 @@ function createMovieElement(movie, listName) {
     title.classList.add('movie-title');
     title.textContent = movie.title;
 
+    if (listName === 'watchlist' || listName === 'watched') {
+        const checkbox = document.createElement('input');
+        checkbox.type = 'checkbox';
+        checkbox.classList.add('movie-select');
+        checkbox.dataset.movieId = movie.id;
+        title.prepend(checkbox);
+    }
+
     const details = document.createElement('div');
     details.classList.add('movie-details');
 
@@ -437,6 +446,22 @@ async function makeApiRequest(url, method, body = null) {
     return response;
 }
 
+// List endpoints return one page at a time and put the cursor for the next page in the
+// X-Next-Cursor header; follow it until the last page, starting after cursor when one is given
+async function fetchAllPages(url, cursor = null) {
+    const items = [];
+    do {
+        const pageUrl = cursor ? `${url}&cursor=${encodeURIComponent(cursor)}` : url;
+        const response = await makeApiRequest(pageUrl, 'GET');
+        if (!response.ok) {
+            throw new Error(`Request to ${url} failed with status ${response.status}`);
+        }
+        items.push(...await response.json());
+        cursor = response.headers.get('X-Next-Cursor');
+    } while (cursor);
+    return items;
+}
+
 function getUserId() {
     return localStorage.getItem('userId');
 }
@@ -459,39 +484,34 @@ function createUserElement(user, type) {
 
     if (type === 'search') { // Search user page
         // Check if a request already exists
-        if (user.requestStatus) {
-            if (user.requestStatus === 'pending') {
-                if (user.requester_id === getUserId()) {
-                    // Request sent by the current user
-                    userId.textContent = user.requestee_id;
-                    const removeButton = document.createElement('button');
-                    removeButton.classList.add('button-red');
-                    removeButton.textContent = 'Remove Request';
-                    removeButton.onclick = async () => removeFriendRequest(user.requestee_id);
-                    actions.appendChild(removeButton);
-                } else {
-                    // Request received by the current user
-                    const acceptButton = document.createElement('button');
-                    acceptButton.textContent = 'Accept';
-                    acceptButton.classList.add('button-accept');
-                    acceptButton.onclick = async () => {
-                        await acceptFriendRequest(user.requester_id);
-                        user.isFriend = true;
-                        user.requestStatus = null;
-                        recreateUserElement(user, 'search');
-                    };
-                    const declineButton = document.createElement('button');
-                    declineButton.classList.add('button-red');
-                    declineButton.textContent = 'Decline';
-                    declineButton.onclick = async () => {
-                        await declineFriendRequest(user.requester_id);
-                        user.requestStatus = null;
-                        recreateUserElement(user, 'search');
-                    };
-                    actions.appendChild(acceptButton);
-                    actions.appendChild(declineButton);
-                }
-            }
+        if (user.pendingSent) {
+            // Request sent by the current user
+            const removeButton = document.createElement('button');
+            removeButton.classList.add('button-red');
+            removeButton.textContent = 'Remove Request';
+            removeButton.onclick = async () => removeFriendRequest(user.userId);
+            actions.appendChild(removeButton);
+        } else if (user.pendingReceived) {
+            // Request received by the current user
+            const acceptButton = document.createElement('button');
+            acceptButton.textContent = 'Accept';
+            acceptButton.classList.add('button-accept');
+            acceptButton.onclick = async () => {
+                await acceptFriendRequest(user.userId);
+                user.isFriend = true;
+                user.pendingReceived = false;
+                recreateUserElement(user, 'search');
+            };
+            const declineButton = document.createElement('button');
+            declineButton.classList.add('button-red');
+            declineButton.textContent = 'Decline';
+            declineButton.onclick = async () => {
+                await declineFriendRequest(user.userId);
+                user.pendingReceived = false;
+                recreateUserElement(user, 'search');
+            };
+            actions.appendChild(acceptButton);
+            actions.appendChild(declineButton);
         } else if (user.isFriend) {
             // User is already a friend
             const watchedButton = document.createElement('button');
@@ -522,7 +542,7 @@ function createUserElement(user, type) {
             const removeButton = document.createElement('button');
             removeButton.classList.add('button-red');
             removeButton.textContent = 'Remove Request';
-            removeButton.onclick = async () => { await removeFriendRequest(user.requestee_id); loadFriendRequests(); };
+            removeButton.onclick = () => removeFriendRequest(user.requestee_id);
             actions.appendChild(removeButton);
         } else {
             // Request received by the current user
@@ -530,12 +550,12 @@ function createUserElement(user, type) {
             const acceptButton = document.createElement('button');
             acceptButton.textContent = 'Accept';
             acceptButton.classList.add('button-accept');
-            acceptButton.onclick = async () => { await acceptFriendRequest(user.requester_id); loadFriendRequests(); loadFriends(); };
+            acceptButton.onclick = () => acceptFriendRequest(user.requester_id);
 
             const declineButton = document.createElement('button');
             declineButton.textContent = 'Decline';
             declineButton.classList.add('button-red');
-            declineButton.onclick = async () => { await declineFriendRequest(user.requester_id); loadFriendRequests(); loadFriends(); };
+            declineButton.onclick = () => declineFriendRequest(user.requester_id);
 
             actions.appendChild(acceptButton);
             actions.appendChild(declineButton);
@@ -548,7 +568,7 @@ function createUserElement(user, type) {
         const removeButton = document.createElement('button');
         removeButton.classList.add('button-red');
         removeButton.textContent = 'Remove';
-        removeButton.onclick = async () => { await removeFriend(user.friendId); loadFriends(); };
+        removeButton.onclick = () => removeFriend(user.friendId);
         actions.appendChild(watchedButton);
         actions.appendChild(removeButton);
     }
@@ -666,8 +686,7 @@ function clearElement(element) {
 async function loadFriendRequests() {
     const userId = getUserId();
     try {
-        const response = await makeApiRequest(`/api/listFriendRequests?userId=${userId}`, 'GET');
-        const requests = await response.json();
+        const requests = await fetchAllPages(`/api/listFriendRequests?userId=${userId}`);
         displayFriendRequests(requests);
     } catch (error) {
         showError('Failed to load friend requests');
@@ -677,14 +696,41 @@ async function loadFriendRequests() {
 async function loadFriends() {
     const userId = getUserId();
     try {
-        const response = await makeApiRequest(`/api/listFriends?userId=${userId}`, 'GET');
-        const friends = await response.json();
+        const friends = await fetchAllPages(`/api/listFriends?userId=${userId}`);
         displayFriends(friends);
     } catch (error) {
         showError('Failed to load friends');
     }
 }
 
+const FRIEND_EVENTS = [
+    'friend-request-sent',
+    'friend-request-accepted',
+    'friend-request-declined',
+    'friend-request-removed',
+    'friend-removed'
+];
+
+// Friend request and friendship changes, the user's own included, are pushed on /api/events.
+// onChange gets each event's name and data, and null after a reconnect, when events may have been missed.
+function subscribeToFriendEvents(onChange) {
+    const userId = getUserId();
+    if (!userId) {
+        return;
+    }
+    const source = new EventSource(`/api/events?userId=${encodeURIComponent(userId)}`);
+    let opened = false;
+    source.onopen = () => {
+        if (opened) {
+            onChange(null, null);
+        }
+        opened = true;
+    };
+    FRIEND_EVENTS.forEach(name => {
+        source.addEventListener(name, event => onChange(name, JSON.parse(event.data)));
+    });
+}
+
 function displayFriendRequests(requests) {
     const container = document.querySelector('#pending-requests');
     clearElement(container);
@@ -714,10 +760,43 @@ function initRegisterPage() {
     document.querySelector('#register-form').addEventListener('submit', handleRegister);
 }
 
+// The profile, friends and friend requests arrive in one response; only lists longer than a
+// page need further requests
 async function initProfilePage() {
-    loadProfileInfo();
-    loadFriendRequests();
-    loadFriends();
+    const userId = getUserId();
+    if (!userId) {
+        showError('User not logged in');
+        return;
+    }
+    try {
+        const response = await makeApiRequest(`/api/profileView?userId=${userId}`, 'GET');
+        if (!response.ok) {
+            throw new Error(`Profile request failed with status ${response.status}`);
+        }
+        const view = await response.json();
+        displayProfileInfo(view);
+
+        const requests = view.nextFriendRequestsCursor
+            ? view.friendRequests.concat(await fetchAllPages(`/api/listFriendRequests?userId=${userId}`, view.nextFriendRequestsCursor))
+            : view.friendRequests;
+        displayFriendRequests(requests);
+
+        const friends = view.nextFriendsCursor
+            ? view.friends.concat(await fetchAllPages(`/api/listFriends?userId=${userId}`, view.nextFriendsCursor))
+            : view.friends;
+        displayFriends(friends);
+    } catch (error) {
+        showError('Failed to load profile information');
+    }
+
+    subscribeToFriendEvents(name => {
+        if (name !== 'friend-removed') {
+            loadFriendRequests();
+        }
+        if (name === null || name === 'friend-request-accepted' || name === 'friend-removed') {
+            loadFriends();
+        }
+    });
 }
 //#endregion
 
@@ -733,6 +812,7 @@ function initWatchedPage() {
     const friendId = urlParams.get('friendId');
     if (friendId) {
         loadFriendWatchedList(friendId);
+        document.getElementById('watched-actions')?.remove();
         document.title = `Watched Movies - ${friendId}`;
         const headerTitle = document.getElementById('watched-title');
         if (headerTitle) {
@@ -777,6 +857,7 @@ function initSearchPage() {
         searchTitle.textContent = 'Search Users';
         if (query) {
             performUserSearch(query);
+            subscribeToFriendEvents(() => performUserSearch(query));
         }
     } else {
         searchForm.style.display = 'block';
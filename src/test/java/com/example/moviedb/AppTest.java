@@ -10,4 +10,17 @@ class AppTest {
         // This test will pass if the context loads successfully
         assertTrue(true);
     }
+
+    @Test
+    void matchesListEtags() {
+        String etag = App.listEtag("watchlist", 255);
+
+        assertEquals("\"watchlist-ff\"", etag);
+        assertTrue(App.etagMatches(etag, etag));
+        assertTrue(App.etagMatches("\"friends-1\", W/" + etag, etag));
+        assertTrue(App.etagMatches("*", etag));
+        assertFalse(App.etagMatches(null, etag));
+        assertFalse(App.etagMatches(App.listEtag("watchlist", 256), etag));
+        assertFalse(App.etagMatches(App.listEtag("watched", 255), etag));
+    }
 }
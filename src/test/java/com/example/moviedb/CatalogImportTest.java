@@ -0,0 +1,50 @@
+package com.example.moviedb;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+class CatalogImportTest {
+
+    @Test
+    void parsesExportLines() {
+        Movie movie = CatalogImport.parseLine(
+            "{\"adult\":false,\"id\":603,\"original_title\":\"The Matrix\",\"popularity\":80.5,\"video\":false}");
+
+        assertEquals(603, movie.getId());
+        assertEquals("The Matrix", movie.getTitle());
+        assertNull(movie.getPosterPath());
+        assertNull(CatalogImport.parseLine("{\"adult\":true,\"id\":1,\"original_title\":\"Adult\"}"));
+        assertNull(CatalogImport.parseLine("{\"adult\":false,\"id\":2,\"original_title\":\"Trailer\",\"video\":true}"));
+        assertNull(CatalogImport.parseLine("{\"adult\":false,\"id\":3,\"original_title\":\"\"}"));
+        assertNull(CatalogImport.parseLine("{\"id\":"));
+        assertEquals("Spirited Away", CatalogImport.parseLine(
+            "{\"id\":129,\"original_title\":\"\\u5343\\u3068\\u5343\\u5c0b\\u306e\\u795e\\u96a0\\u3057\",\"title\":\"Spirited Away\"}").getTitle());
+    }
+
+    @Test
+    void checkpointWaitsForEarlierChunks() throws Exception {
+        Path file = Files.createTempFile("catalog-import", ".checkpoint");
+        Files.delete(file);
+        try {
+            CatalogImport.Checkpoint checkpoint = new CatalogImport.Checkpoint(file);
+            assertEquals(0, checkpoint.load());
+            checkpoint.started(0);
+            checkpoint.started(100);
+            checkpoint.started(200);
+
+            checkpoint.finished(100, 200);
+            assertEquals(0, checkpoint.committedThrough());
+            checkpoint.finished(0, 100);
+            assertEquals(200, checkpoint.committedThrough());
+            checkpoint.finished(200, 300);
+            assertEquals(300, checkpoint.committedThrough());
+
+            assertEquals(300, new CatalogImport.Checkpoint(file).load());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.example.moviedb;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChangeSetTest {
+
+    @Test
+    void writesChangesWithoutSnapshotLists() throws Exception {
+        Movie movie = new Movie(603, "The Matrix", "1999-03-30", "/matrix.jpg", new int[] {28, 878});
+        ChangeSet changeSet = ChangeSet.changes(12, Arrays.asList(
+            new ListChange(11, "watchlist", "add", "603", movie),
+            new ListChange(12, "friends", "remove", "bob", null)), true);
+
+        JsonNode json = Json.MAPPER.readTree(Json.MAPPER.writeValueAsString(changeSet));
+        assertEquals(12, json.get("seq").asLong());
+        assertFalse(json.get("snapshot").asBoolean());
+        assertTrue(json.get("hasMore").asBoolean());
+        assertFalse(json.has("watchlist"));
+        assertFalse(json.has("friends"));
+
+        JsonNode added = json.get("changes").get(0);
+        assertEquals("603", added.get("item").asText());
+        assertEquals("The Matrix", added.get("movie").get("title").asText());
+        JsonNode removed = json.get("changes").get(1);
+        assertEquals("remove", removed.get("op").asText());
+        assertFalse(removed.has("movie"));
+    }
+
+    @Test
+    void writesSnapshotLists() throws Exception {
+        ChangeSet changeSet = ChangeSet.snapshot(7, Collections.emptyList(), Collections.emptyList(), Collections.singletonList("bob"), null);
+
+        JsonNode json = Json.MAPPER.readTree(Json.MAPPER.writeValueAsString(changeSet));
+        assertTrue(json.get("snapshot").asBoolean());
+        assertEquals(7, json.get("seq").asLong());
+        assertFalse(json.get("hasMore").asBoolean());
+        assertFalse(json.has("cursor"));
+        assertEquals(0, json.get("changes").size());
+        assertEquals(0, json.get("watchlist").size());
+        assertEquals("bob", json.get("friends").get(0).asText());
+    }
+
+    @Test
+    void writesSnapshotPageCursor() throws Exception {
+        ChangeSet changeSet = ChangeSet.snapshot(7, Collections.emptyList(), Collections.emptyList(), Collections.emptyList(), "7:watched:603");
+
+        JsonNode json = Json.MAPPER.readTree(Json.MAPPER.writeValueAsString(changeSet));
+        assertTrue(json.get("hasMore").asBoolean());
+        assertEquals("7:watched:603", json.get("cursor").asText());
+        assertEquals(7, json.get("seq").asLong());
+    }
+
+    @Test
+    void servesChangesOnlyWithinTheLog() {
+        // No cursor yet
+        assertTrue(ScalarDBOperations.needsSnapshot(0, 0, 0));
+        assertTrue(ScalarDBOperations.needsSnapshot(0, 12, 0));
+        // Anywhere from the compacted position up to the head
+        assertFalse(ScalarDBOperations.needsSnapshot(5, 12, 0));
+        assertFalse(ScalarDBOperations.needsSnapshot(5, 12, 5));
+        assertFalse(ScalarDBOperations.needsSnapshot(12, 12, 5));
+        // Entries after the cursor were compacted away
+        assertTrue(ScalarDBOperations.needsSnapshot(4, 12, 5));
+        // Ahead of the log, e.g. after the user's log was reset
+        assertTrue(ScalarDBOperations.needsSnapshot(13, 12, 0));
+    }
+
+    @Test
+    void readsBackSnapshotCursors() {
+        ScalarDBOperations.SnapshotCursor cursor =
+            ScalarDBOperations.SnapshotCursor.parse(new ScalarDBOperations.SnapshotCursor(7, "watched", "603").toString());
+        assertEquals(7, cursor.seq);
+        assertEquals("watched", cursor.list);
+        assertEquals("603", cursor.after);
+
+        // Friend ids may contain the separator
+        cursor = ScalarDBOperations.SnapshotCursor.parse("7:friends:bob:smith");
+        assertEquals("bob:smith", cursor.after);
+        assertEquals("", ScalarDBOperations.SnapshotCursor.parse("7:watchlist:").after);
+    }
+
+    @Test
+    void rejectsInvalidSnapshotCursors() {
+        assertThrows(IllegalArgumentException.class, () -> ScalarDBOperations.SnapshotCursor.parse("7:watchlist"));
+        assertThrows(IllegalArgumentException.class, () -> ScalarDBOperations.SnapshotCursor.parse("7:favorites:603"));
+        assertThrows(IllegalArgumentException.class, () -> ScalarDBOperations.SnapshotCursor.parse("x:watchlist:603"));
+        assertThrows(IllegalArgumentException.class, () -> ScalarDBOperations.SnapshotCursor.parse("7:watched:bob"));
+    }
+}
@@ -0,0 +1,109 @@
+package com.example.moviedb;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+class EventHubTest {
+
+    private static class RecordingSink implements EventHub.Sink {
+        final List<String> written = new CopyOnWriteArrayList<>();
+        final CountDownLatch release;
+        volatile boolean closed;
+
+        RecordingSink(CountDownLatch release) {
+            this.release = release;
+        }
+
+        @Override
+        public void send(String event, String data) {
+            awaitRelease();
+            written.add(event + " " + data);
+        }
+
+        @Override
+        public void heartbeat() {
+            awaitRelease();
+            written.add("heartbeat");
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+
+        private void awaitRelease() {
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static void waitFor(RecordingSink sink, int writes) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (sink.written.size() < writes && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+    }
+
+    @Test
+    void deliversEventsToEveryConnectionOfTheUser() throws Exception {
+        EventHub hub = new EventHub(8, 2, TimeUnit.HOURS.toMillis(1), new Metrics());
+        RecordingSink first = new RecordingSink(new CountDownLatch(0));
+        RecordingSink second = new RecordingSink(new CountDownLatch(0));
+        RecordingSink other = new RecordingSink(new CountDownLatch(0));
+        hub.subscribe("alice", first);
+        hub.subscribe("alice", second);
+        hub.subscribe("bob", other);
+
+        hub.publish("alice", "friend-removed", Collections.singletonMap("friendId", "carol"));
+        waitFor(first, 1);
+        waitFor(second, 1);
+
+        assertEquals(List.of("friend-removed {\"friendId\":\"carol\"}"), first.written);
+        assertEquals(first.written, second.written);
+        assertTrue(other.written.isEmpty());
+        hub.close();
+    }
+
+    @Test
+    void closesConnectionWhoseQueueOverflows() throws Exception {
+        Metrics metrics = new Metrics();
+        EventHub hub = new EventHub(2, 1, TimeUnit.HOURS.toMillis(1), metrics);
+        CountDownLatch release = new CountDownLatch(1);
+        RecordingSink slow = new RecordingSink(release);
+        EventHub.Connection connection = hub.subscribe("alice", slow);
+
+        // The first event is taken by the writer, which then blocks; two more fill the queue
+        for (int i = 0; i < 4; i++) {
+            hub.publish("alice", "friend-request-sent", i);
+            Thread.sleep(20);
+        }
+        release.countDown();
+
+        assertTrue(slow.closed);
+        assertEquals(0, hub.connectionCount());
+        assertTrue(metrics.render().contains("sse_queue_overflows_total 1"));
+        connection.close();
+        hub.close();
+    }
+
+    @Test
+    void sendsHeartbeats() throws Exception {
+        EventHub hub = new EventHub(8, 1, 20, new Metrics());
+        RecordingSink sink = new RecordingSink(new CountDownLatch(0));
+        hub.subscribe("alice", sink);
+
+        waitFor(sink, 2);
+
+        assertEquals(List.of("heartbeat", "heartbeat"), sink.written.subList(0, 2));
+        hub.close();
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.moviedb;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JsonTest {
+    private static final int ITERATIONS = 500;
+
+    // A full /api/listwatched or /api/searchMovies page, as rows were kept before typed movies
+    private static List<Map<String, String>> movieMapPage(int size) {
+        List<Map<String, String>> movies = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            Map<String, String> movie = new HashMap<>();
+            movie.put("id", String.valueOf(1000 + i));
+            movie.put("title", "Movie number " + i);
+            movie.put("release_date", "2001-01-01");
+            movie.put("poster_path", "/poster" + i + ".jpg");
+            movie.put("genre_ids", "12,14,878");
+            movies.add(movie);
+        }
+        return movies;
+    }
+
+    private static List<Movie> moviePage(int size) {
+        List<Movie> movies = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            movies.add(new Movie(1000 + i, "Movie number " + i, "2001-01-01", "/poster" + i + ".jpg", new int[] {12, 14, 878}));
+        }
+        return movies;
+    }
+
+    // What the list handlers did before: a fresh ObjectMapper builds a JsonNode tree, which
+    // ctx.json then turns into a String
+    private static byte[] treeResponse(List<Map<String, String>> movies) throws Exception {
+        JsonNode tree = new ObjectMapper().valueToTree(movies);
+        return new ObjectMapper().writeValueAsString(tree).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void streamsSameJsonAsTreeResponse() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Json.write(out, moviePage(3));
+
+        assertEquals(Json.MAPPER.readTree(treeResponse(movieMapPage(3))), Json.MAPPER.readTree(out.toByteArray()));
+    }
+
+    @Test
+    void streamingAllocatesLessThanTreeResponse() throws Exception {
+        List<Map<String, String>> movieMaps = movieMapPage(100);
+        List<Movie> movies = moviePage(100);
+        OutputStream sink = OutputStream.nullOutputStream();
+
+        long before = allocatedPerCall(() -> treeResponse(movieMaps));
+        long after = allocatedPerCall(() -> Json.write(sink, movies));
+        System.out.printf("100-movie page: %d bytes allocated per response with a JsonNode tree, %d streamed%n", before, after);
+
+        assertTrue(after < before);
+    }
+
+    private interface Work {
+        void run() throws Exception;
+    }
+
+    private static long allocatedPerCall(Work work) throws Exception {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        for (int i = 0; i < ITERATIONS; i++) {
+            work.run();
+        }
+        long start = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < ITERATIONS; i++) {
+            work.run();
+        }
+        return (threads.getThreadAllocatedBytes(threadId) - start) / ITERATIONS;
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.moviedb;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+class LruCacheTest {
+
+    @Test
+    void evictsLeastRecentlyUsedEntry() {
+        LruCache<Integer, String> cache = new LruCache<>(2);
+        cache.put(1, "one");
+        cache.put(2, "two");
+        cache.get(1);
+        cache.put(3, "three");
+
+        assertEquals("one", cache.get(1));
+        assertNull(cache.get(2));
+        assertEquals("three", cache.get(3));
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    void countsHitsMissesAndEvictions() {
+        LruCache<Integer, String> cache = new LruCache<>(1);
+        cache.put(1, "one");
+        cache.get(1);
+        cache.get(2);
+        cache.put(2, "two");
+
+        assertEquals(1L, (long) cache.stats().get("hits"));
+        assertEquals(1L, (long) cache.stats().get("misses"));
+        assertEquals(1L, (long) cache.stats().get("evictions"));
+        assertEquals(1L, (long) cache.stats().get("size"));
+    }
+
+    @Test
+    void peekLeavesStatsAndOrderAlone() {
+        LruCache<Integer, String> cache = new LruCache<>(2);
+        cache.put(1, "one");
+        cache.put(2, "two");
+
+        assertEquals("one", cache.peek(1));
+        assertTrue(cache.containsKey(1));
+        assertNull(cache.peek(3));
+        cache.put(3, "three");
+
+        assertFalse(cache.containsKey(1));
+        assertEquals(0L, (long) cache.stats().get("hits"));
+        assertEquals(0L, (long) cache.stats().get("misses"));
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.moviedb;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MetricsTest {
+
+    @Test
+    void writesCountersInPrometheusFormat() {
+        Metrics metrics = new Metrics();
+        metrics.counter("http_requests_total", "HTTP requests", "route", "status").labels("/api/a", "200").add(3);
+        metrics.counter("http_requests_total", "HTTP requests", "route", "status").labels("/api/a", "200").increment();
+
+        String text = metrics.render();
+
+        assertTrue(text.contains("# HELP http_requests_total HTTP requests\n"));
+        assertTrue(text.contains("# TYPE http_requests_total counter\n"));
+        assertTrue(text.contains("http_requests_total{route=\"/api/a\",status=\"200\"} 4\n"));
+    }
+
+    @Test
+    void histogramBucketsAreCumulative() {
+        Metrics metrics = new Metrics();
+        Metrics.Histogram.Child latency = metrics.histogram("db_operation_duration_seconds", "Latency", "operation").labels("get");
+        latency.observeNanos(TimeUnit.MICROSECONDS.toNanos(500));
+        latency.observeNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        latency.observeNanos(TimeUnit.MILLISECONDS.toNanos(30));
+        latency.observeNanos(TimeUnit.SECONDS.toNanos(20));
+
+        String text = metrics.render();
+
+        assertTrue(text.contains("db_operation_duration_seconds_bucket{operation=\"get\",le=\"0.001\"} 2\n"));
+        assertTrue(text.contains("db_operation_duration_seconds_bucket{operation=\"get\",le=\"0.025\"} 2\n"));
+        assertTrue(text.contains("db_operation_duration_seconds_bucket{operation=\"get\",le=\"0.05\"} 3\n"));
+        assertTrue(text.contains("db_operation_duration_seconds_bucket{operation=\"get\",le=\"10.0\"} 3\n"));
+        assertTrue(text.contains("db_operation_duration_seconds_bucket{operation=\"get\",le=\"+Inf\"} 4\n"));
+        assertTrue(text.contains("db_operation_duration_seconds_count{operation=\"get\"} 4\n"));
+        assertTrue(text.contains("db_operation_duration_seconds_sum{operation=\"get\"} 20.0315\n"));
+        assertEquals(4, latency.count());
+    }
+
+    @Test
+    void escapesLabelValues() {
+        Metrics metrics = new Metrics();
+        metrics.counter("tmdb_responses_total", "TMDB responses", "endpoint").labels("a\"b\\c").increment();
+
+        assertTrue(metrics.render().contains("tmdb_responses_total{endpoint=\"a\\\"b\\\\c\"} 1\n"));
+    }
+
+    @Test
+    void rejectsWrongLabelCount() {
+        Metrics metrics = new Metrics();
+        Metrics.Counter counter = metrics.counter("http_requests_total", "HTTP requests", "route", "status");
+
+        assertThrows(IllegalArgumentException.class, () -> counter.labels("/api/a"));
+    }
+
+    // Recording happens on every request and database call, so it has to stay well under a
+    // microsecond even when the child is looked up by label every time
+    @Test
+    void recordingIsCheap() {
+        Metrics metrics = new Metrics();
+        Metrics.Histogram histogram = metrics.histogram("http_request_duration_seconds", "Latency", "method", "route");
+        int iterations = 1_000_000;
+
+        for (int i = 0; i < iterations; i++) {
+            histogram.labels("GET", "/api/listwatchlist").observeNanos(i);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            histogram.labels("GET", "/api/listwatchlist").observeNanos(i);
+        }
+        long nanosPerRecord = (System.nanoTime() - start) / iterations;
+        System.out.printf("Recording a labelled histogram sample takes about %dns%n", nanosPerRecord);
+
+        assertEquals(2L * iterations, histogram.labels("GET", "/api/listwatchlist").count());
+        assertTrue(nanosPerRecord < 1_000);
+    }
+}
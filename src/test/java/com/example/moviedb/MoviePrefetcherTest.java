@@ -0,0 +1,79 @@
+package com.example.moviedb;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+class MoviePrefetcherTest {
+
+    private static void awaitStat(MoviePrefetcher prefetcher, String name, long expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (prefetcher.stats().get(name) != expected && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(expected, (long) prefetcher.stats().get(name));
+    }
+
+    @Test
+    void loadsQueuedMoviesOnceAndCountsHits() throws Exception {
+        List<Integer> loaded = new CopyOnWriteArrayList<>();
+        MoviePrefetcher prefetcher = new MoviePrefetcher(movieId -> {
+            loaded.add(movieId);
+            return CompletableFuture.completedFuture(movieId);
+        }, 10, 2, 1_000, 60_000, new Metrics());
+
+        prefetcher.offer(Arrays.asList(1, 2, 2, 3));
+        prefetcher.offer(Arrays.asList(3, 1));
+        awaitStat(prefetcher, "fetched", 3);
+        prefetcher.close();
+
+        assertEquals(Arrays.asList(1, 2, 3), loaded);
+        prefetcher.demanded(2, true);
+        prefetcher.demanded(4, true);
+        prefetcher.demanded(3, false);
+        Map<String, Long> stats = prefetcher.stats();
+        assertEquals(1L, (long) stats.get("hits"));
+        assertEquals(2L, (long) stats.get("misses"));
+        assertEquals(33L, (long) stats.get("hitRatioPercent"));
+    }
+
+    @Test
+    void boundsQueueAndRunningPrefetches() throws Exception {
+        Map<Integer, CompletableFuture<Object>> running = new ConcurrentHashMap<>();
+        MoviePrefetcher prefetcher = new MoviePrefetcher(movieId -> {
+            CompletableFuture<Object> future = new CompletableFuture<>();
+            running.put(movieId, future);
+            return future;
+        }, 3, 1, 1_000, 60_000, new Metrics());
+
+        // Only one prefetch may run, so 2..5 wait and the oldest waiting one is dropped
+        prefetcher.offer(Arrays.asList(1));
+        awaitStat(prefetcher, "inFlight", 1);
+        prefetcher.offer(Arrays.asList(2, 3, 4, 5));
+        assertEquals(1L, (long) prefetcher.stats().get("dropped"));
+
+        // An add taking a queued movie cancels its prefetch
+        prefetcher.demanded(4, false);
+        assertEquals(1L, (long) prefetcher.stats().get("cancelled"));
+
+        running.get(1).complete("done");
+        awaitStat(prefetcher, "fetched", 1);
+        awaitStat(prefetcher, "queueSize", 1);
+        running.get(3).completeExceptionally(new IllegalStateException("upstream down"));
+        awaitStat(prefetcher, "failed", 1);
+        awaitStat(prefetcher, "queueSize", 0);
+        awaitStat(prefetcher, "inFlight", 1);
+        running.get(5).complete("done");
+        awaitStat(prefetcher, "fetched", 2);
+        prefetcher.close();
+
+        assertFalse(running.containsKey(2));
+        assertFalse(running.containsKey(4));
+    }
+}
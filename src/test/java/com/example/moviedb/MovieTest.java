@@ -0,0 +1,43 @@
+package com.example.moviedb;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MovieTest {
+
+    @Test
+    void serializesInStoredWireFormat() throws Exception {
+        Movie movie = new Movie(603, "The Matrix", "1999-03-30", "/matrix.jpg", new int[] {28, 878});
+
+        JsonNode json = Json.MAPPER.readTree(Json.MAPPER.writeValueAsString(movie));
+
+        assertEquals("603", json.get("id").asText());
+        assertTrue(json.get("id").isTextual());
+        assertEquals("The Matrix", json.get("title").asText());
+        assertEquals("1999-03-30", json.get("release_date").asText());
+        assertEquals("/matrix.jpg", json.get("poster_path").asText());
+        assertEquals("28,878", json.get("genre_ids").asText());
+    }
+
+    @Test
+    void parsesStoredGenreIds() {
+        assertArrayEquals(new int[] {28, 878}, Movie.parseGenreIds("28, 878"));
+        assertArrayEquals(new int[] {12}, Movie.parseGenreIds("12,"));
+        assertArrayEquals(new int[0], Movie.parseGenreIds(null));
+        assertArrayEquals(new int[0], Movie.parseGenreIds(""));
+    }
+
+    @Test
+    void buildsMovieFromTmdbDetails() throws Exception {
+        JsonNode details = Json.MAPPER.readTree(
+            "{\"id\":603,\"title\":\"The Matrix\",\"release_date\":\"1999-03-30\",\"poster_path\":null,\"genre_ids\":[28,878]}");
+
+        Movie movie = MovieService.toMovie(details);
+
+        assertEquals(603, movie.getId());
+        assertNull(movie.getPosterPath());
+        assertEquals("28,878", movie.getGenreIdsText());
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.moviedb;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+class MovieTitleIndexTest {
+
+    private MovieTitleIndex sampleIndex() {
+        MovieTitleIndex index = new MovieTitleIndex();
+        index.add(1, "Dune");
+        index.add(2, "Dune: Part Two");
+        index.add(3, "The Lord of the Rings: The Two Towers");
+        index.add(4, "Am\u00e9lie");
+        index.add(5, "Dunkirk");
+        return index;
+    }
+
+    @Test
+    void ranksMoviesMatchingMoreTokensFirst() {
+        List<Integer> results = sampleIndex().search("dune two", 0, 10);
+
+        assertEquals(Arrays.asList(2, 1, 3), results);
+    }
+
+    @Test
+    void matchesLastTokenAsPrefix() {
+        List<Integer> results = sampleIndex().search("dun", 0, 10);
+
+        assertEquals(Arrays.asList(1, 5, 2), results);
+    }
+
+    @Test
+    void matchesSingleLetterOnlyExactly() {
+        MovieTitleIndex index = sampleIndex();
+        index.add(6, "M");
+
+        assertEquals(Arrays.asList(6), index.search("m", 0, 10));
+        assertEquals(Arrays.asList(4), index.search("am", 0, 10));
+    }
+
+    @Test
+    void stopsPrefixExpansionAtLimit() {
+        MovieTitleIndex index = new MovieTitleIndex(1);
+        index.add(1, "Dune");
+        index.add(2, "Dunkirk");
+        index.add(3, "Dunston Checks In");
+
+        // Only the first prefixed token, in alphabetical order, is expanded
+        assertEquals(Arrays.asList(1), index.search("du", 0, 10));
+    }
+
+    @Test
+    void ignoresCaseAndAccents() {
+        assertEquals(Arrays.asList(4), sampleIndex().search("AMELIE", 0, 10));
+    }
+
+    @Test
+    void paginatesRankedResults() {
+        MovieTitleIndex index = sampleIndex();
+
+        assertEquals(Arrays.asList(1, 5), index.search("dun", 0, 2));
+        assertEquals(Arrays.asList(2), index.search("dun", 2, 2));
+        assertTrue(index.search("dun", 3, 2).isEmpty());
+    }
+
+    @Test
+    void reindexesRenamedMovie() {
+        MovieTitleIndex index = sampleIndex();
+        index.add(5, "Oppenheimer");
+
+        assertEquals(Arrays.asList(1, 2), index.search("dun", 0, 10));
+        assertEquals(Arrays.asList(5), index.search("oppenheimer", 0, 10));
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.moviedb;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+class RefreshingCacheTest {
+
+    @Test
+    void coalescesConcurrentLoadsOfSameKey() {
+        RefreshingCache<String> cache = new RefreshingCache<>(10, 60_000, 0);
+        AtomicInteger loads = new AtomicInteger();
+        CompletableFuture<String> upstream = new CompletableFuture<>();
+
+        List<CompletableFuture<String>> results = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            results.add(cache.get("dune", () -> {
+                loads.incrementAndGet();
+                return upstream;
+            }));
+        }
+        upstream.complete("result");
+
+        for (CompletableFuture<String> result : results) {
+            assertEquals("result", result.join());
+        }
+        assertEquals(1, loads.get());
+        assertEquals(7L, (long) cache.stats().get("coalesced"));
+    }
+
+    @Test
+    void servesStaleEntryWhileRefreshing() {
+        RefreshingCache<String> cache = new RefreshingCache<>(10, 0, 60_000);
+        CompletableFuture<String> refresh = new CompletableFuture<>();
+
+        assertEquals("v1", cache.get("key", () -> CompletableFuture.completedFuture("v1")).join());
+        assertEquals("v1", cache.get("key", () -> refresh).join());
+        assertEquals("v1", cache.get("key", () -> CompletableFuture.completedFuture("unused")).join());
+
+        refresh.complete("v2");
+        assertEquals(2L, (long) cache.stats().get("staleHits"));
+        assertEquals("v2", cache.get("key", () -> CompletableFuture.completedFuture("v3")).join());
+    }
+
+    @Test
+    void propagatesLoaderFailureWithoutCaching() {
+        RefreshingCache<String> cache = new RefreshingCache<>(10, 60_000, 0);
+
+        CompletableFuture<String> result = cache.get("key", () -> CompletableFuture.failedFuture(new IllegalStateException("upstream down")));
+
+        CompletionException error = assertThrows(CompletionException.class, result::join);
+        assertTrue(error.getCause() instanceof IllegalStateException);
+        assertEquals(0L, (long) cache.stats().get("size"));
+    }
+}
@@ -0,0 +1,129 @@
+package com.example.moviedb;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+class TmdbClientTest {
+
+    private HttpServer stubTmdb;
+    private ExecutorService stubThreads;
+    private TmdbClient client;
+
+    @BeforeEach
+    void startStubTmdb() throws IOException {
+        stubTmdb = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        stubTmdb.createContext("/search/movie", exchange -> {
+            StringBuilder results = new StringBuilder();
+            for (int i = 1; i <= 25; i++) {
+                results.append(i > 1 ? "," : "").append("{\"id\":").append(i).append(",\"title\":\"Dune ").append(i).append("\"}");
+            }
+            respond(exchange, 200, "{\"page\":1,\"results\":[" + results + "],\"total_results\":25}");
+        });
+        stubTmdb.createContext("/movie/438631", exchange -> respond(exchange, 200,
+            "{\"id\":438631,\"title\":\"Dune\",\"release_date\":\"2021-09-15\",\"poster_path\":\"/d5NXSklXo0qyIYkgV94XAgMIckC.jpg\","
+                + "\"genres\":[{\"id\":878,\"name\":\"Science Fiction\"},{\"id\":12,\"name\":\"Adventure\"}],"
+                + "\"credits\":{\"cast\":[{\"name\":\"Timothee Chalamet\"}]}}"));
+        stubTmdb.createContext("/movie/404", exchange -> respond(exchange, 404, "{\"status_message\":\"not found\"}"));
+        stubTmdb.createContext("/movie/", exchange -> {
+            String id = exchange.getRequestURI().getPath().substring("/movie/".length());
+            respondInTwoChunks(exchange, "{\"id\":" + id + ",\"title\":\"Movie " + id + "\",\"genres\":[]}");
+        });
+        stubThreads = Executors.newCachedThreadPool();
+        stubTmdb.setExecutor(stubThreads);
+        stubTmdb.start();
+
+        String baseUrl = "http://127.0.0.1:" + stubTmdb.getAddress().getPort();
+        client = new TmdbClient(baseUrl, "test-key", Duration.ofSeconds(1), Duration.ofSeconds(2), 2);
+    }
+
+    @AfterEach
+    void stopStubTmdb() {
+        client.close();
+        stubTmdb.stop(0);
+        stubThreads.shutdownNow();
+    }
+
+    @Test
+    void searchKeepsFirstTwentyResults() {
+        JsonNode results = client.searchMovies("dune part two").join();
+
+        assertTrue(results.isArray());
+        assertEquals(20, results.size());
+        assertEquals("Dune 1", results.get(0).get("title").asText());
+    }
+
+    @Test
+    void detailsKeepOnlyUsedFields() {
+        JsonNode movie = client.fetchMovieDetails(438631).join();
+
+        assertEquals(438631, movie.get("id").asInt());
+        assertEquals("Dune", movie.get("title").asText());
+        assertEquals(2, movie.get("genre_ids").size());
+        assertEquals(878, movie.get("genre_ids").get(0).asInt());
+        assertEquals(12, movie.get("genre_ids").get(1).asInt());
+        assertFalse(movie.has("credits"));
+    }
+
+    @Test
+    void surfacesUpstreamStatus() {
+        CompletionException error = assertThrows(CompletionException.class, () -> client.fetchMovieDetails(404).join());
+
+        assertTrue(error.getCause().getCause() instanceof TmdbClient.TmdbException);
+        assertEquals(404, ((TmdbClient.TmdbException) error.getCause().getCause()).getStatusCode());
+    }
+
+    @Test
+    void finishesMoreChunkedResponsesThanThreads() throws Exception {
+        // The client has 2 threads; every body arrives in two chunks
+        List<CompletableFuture<JsonNode>> movies = new ArrayList<>();
+        for (int id = 1; id <= 5; id++) {
+            movies.add(client.fetchMovieDetails(id));
+        }
+
+        for (int id = 1; id <= 5; id++) {
+            assertEquals("Movie " + id, movies.get(id - 1).get(5, TimeUnit.SECONDS).get("title").asText());
+        }
+    }
+
+    private static void respondInTwoChunks(HttpExchange exchange, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, 0);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes, 0, bytes.length / 2);
+            out.flush();
+            Thread.sleep(100);
+            out.write(bytes, bytes.length / 2, bytes.length - bytes.length / 2);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
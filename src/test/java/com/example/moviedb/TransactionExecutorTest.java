@@ -0,0 +1,146 @@
+package com.example.moviedb;
+
+import com.scalar.db.api.DistributedTransaction;
+import com.scalar.db.api.DistributedTransactionManager;
+import com.scalar.db.exception.transaction.CommitConflictException;
+import com.scalar.db.exception.transaction.CrudConflictException;
+import com.scalar.db.exception.transaction.TransactionException;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TransactionExecutorTest {
+
+    // Optimistic store with a single version counter: a transaction remembers the version it
+    // started on and its commit conflicts if another transaction committed in the meantime
+    private static class VersionedStore {
+        final AtomicInteger version = new AtomicInteger();
+        final AtomicInteger started = new AtomicInteger();
+
+        DistributedTransactionManager manager() {
+            return (DistributedTransactionManager) Proxy.newProxyInstance(
+                getClass().getClassLoader(),
+                new Class<?>[] {DistributedTransactionManager.class},
+                (proxy, method, args) -> {
+                    if (method.getName().equals("start") || method.getName().equals("begin")) {
+                        return transaction("tx-" + started.incrementAndGet(), version.get());
+                    }
+                    return null;
+                });
+        }
+
+        private DistributedTransaction transaction(String id, int readVersion) {
+            return (DistributedTransaction) Proxy.newProxyInstance(
+                getClass().getClassLoader(),
+                new Class<?>[] {DistributedTransaction.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getId":
+                            return id;
+                        case "commit":
+                            if (!version.compareAndSet(readVersion, readVersion + 1)) {
+                                throw new CommitConflictException("Version changed since " + readVersion, id);
+                            }
+                            return null;
+                        default:
+                            return null;
+                    }
+                });
+        }
+    }
+
+    @Test
+    void concurrentWritersAllCommitThroughRetries() throws Exception {
+        int threads = 8;
+        int writesPerThread = 50;
+        VersionedStore store = new VersionedStore();
+        TransactionExecutor executor = new TransactionExecutor(store.manager(), 1000, 1, 5, new Metrics());
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> writers = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                writers.add(pool.submit(() -> {
+                    for (int i = 0; i < writesPerThread; i++) {
+                        executor.execute("increment", tx -> {
+                            // Widen the window between start and commit so writers overlap
+                            Thread.sleep(1);
+                            return null;
+                        });
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> writer : writers) {
+                writer.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        Map<String, Long> stats = executor.stats().get("increment");
+        long writes = threads * writesPerThread;
+        double abortRate = (double) stats.get("conflicts") / stats.get("attempts");
+        double retriesPerCall = (double) (stats.get("attempts") - stats.get("calls")) / stats.get("calls");
+        System.out.printf("increment: %d attempts for %d writes, abort rate %.2f, %.2f retries per call%n",
+            stats.get("attempts"), writes, abortRate, retriesPerCall);
+
+        assertEquals(writes, store.version.get());
+        assertEquals(writes, (long) stats.get("calls"));
+        assertEquals(writes, (long) stats.get("commits"));
+        assertEquals(0L, (long) stats.get("failures"));
+        assertTrue(stats.get("conflicts") > 0);
+        assertEquals((long) stats.get("attempts"), stats.get("commits") + stats.get("conflicts"));
+    }
+
+    @Test
+    void givesUpAfterMaxAttempts() {
+        VersionedStore store = new VersionedStore();
+        Metrics metrics = new Metrics();
+        TransactionExecutor executor = new TransactionExecutor(store.manager(), 3, 0, 0, metrics);
+
+        TransactionException e = assertThrows(TransactionException.class, () -> executor.execute("conflict", tx -> {
+            throw new CrudConflictException("conflict", tx.getId());
+        }));
+
+        assertTrue(e.getMessage().contains("after 3 attempt(s)"));
+        Map<String, Long> stats = executor.stats().get("conflict");
+        assertEquals(3L, (long) stats.get("attempts"));
+        assertEquals(3L, (long) stats.get("rollbacks"));
+        assertEquals(1L, (long) stats.get("failures"));
+
+        String exported = metrics.render();
+        assertTrue(exported.contains("db_operation_conflicts_total{operation=\"conflict\"} 3\n"));
+        assertTrue(exported.contains("db_operation_duration_seconds_count{operation=\"conflict\"} 1\n"));
+    }
+
+    @Test
+    void doesNotRetryOtherFailures() {
+        VersionedStore store = new VersionedStore();
+        TransactionExecutor executor = new TransactionExecutor(store.manager(), 3, 0, 0, new Metrics());
+
+        assertThrows(TransactionException.class, () -> executor.execute("fail", tx -> {
+            throw new IllegalStateException("bad row");
+        }));
+
+        assertEquals(1, store.started.get());
+        assertEquals(1L, (long) executor.stats().get("fail").get("failures"));
+        assertEquals(0, store.version.get());
+    }
+
+    @Test
+    void detectsWrappedConflicts() {
+        assertTrue(TransactionExecutor.isConflict(new RuntimeException(new CommitConflictException("conflict", "tx"))));
+        assertFalse(TransactionExecutor.isConflict(new RuntimeException("other")));
+    }
+}